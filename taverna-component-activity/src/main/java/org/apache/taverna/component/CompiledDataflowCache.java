@@ -0,0 +1,242 @@
+package org.apache.taverna.component;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.api.Version.CanonicalID;
+import org.apache.taverna.component.registry.ComponentImplementationCache;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.apache.taverna.component.utils.SingleFlight;
+import org.apache.taverna.component.utils.SystemUtils;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import uk.org.taverna.platform.execution.api.InvalidWorkflowException;
+import uk.org.taverna.scufl2.api.activity.Activity;
+import uk.org.taverna.scufl2.api.configurations.Configuration;
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+import uk.org.taverna.scufl2.api.profiles.Profile;
+
+/**
+ * Shares compiled component implementations between the component activities
+ * that use the same version of a component, so that a workflow using one
+ * component in many places compiles it once. A nested dataflow keeps the
+ * state of each invocation separate (by owning process), so one compiled
+ * dataflow can serve many activities at once.
+ * <p>
+ * Activities {@linkplain #acquire(Version.ID) acquire} the dataflow when they
+ * are realized and {@linkplain #release(Version.ID) release} it when they are
+ * reconfigured; a dataflow is dropped once nothing holds it. There is no
+ * notice of an activity being discarded, so the cache holds dataflows only
+ * weakly: one whose activities were all thrown away without releasing it is
+ * dropped once it has been garbage collected. Dataflows are held by the
+ * {@linkplain CanonicalID canonical form} of their identifiers.
+ * <p>
+ * Before compiling a component, the implementations of the components it
+ * uses are {@linkplain ComponentImplementationCache#prefetch(java.util.Collection)
+ * fetched together}, so that compiling it does not wait on the registry once
+ * for each of them in turn.
+ *
+ * @author Donal Fellows
+ */
+public class CompiledDataflowCache {
+	private static final Logger logger = getLogger(CompiledDataflowCache.class);
+	private static final URI COMPONENT_ACTIVITY = URI
+			.create(ComponentActivity.URI);
+
+	private static class Entry extends WeakReference<Dataflow> {
+		final CanonicalID key;
+		int references;
+
+		Entry(CanonicalID key, Dataflow dataflow,
+				ReferenceQueue<Dataflow> queue) {
+			super(dataflow, queue);
+			this.key = key;
+		}
+	}
+
+	private final Map<CanonicalID, Entry> entries = new HashMap<>();
+	private final ReferenceQueue<Dataflow> collected = new ReferenceQueue<>();
+	private final SingleFlight<CanonicalID, Dataflow> compiling = new SingleFlight<>();
+	private final AtomicLong compilations = new AtomicLong();
+	private ComponentUtil util;
+	private SystemUtils system;
+	private ComponentImplementationCache implementationCache;
+
+	@Required
+	public void setComponentUtil(ComponentUtil util) {
+		this.util = util;
+	}
+
+	@Required
+	public void setSystemUtil(SystemUtils system) {
+		this.system = system;
+	}
+
+	/**
+	 * @param implementationCache
+	 *            Where to load the implementations of the components used by
+	 *            a component before compiling it. If not set, they are looked
+	 *            up one at a time as it is compiled.
+	 */
+	public void setImplementationCache(
+			ComponentImplementationCache implementationCache) {
+		this.implementationCache = implementationCache;
+	}
+
+	/**
+	 * Get the compiled implementation of a component version, compiling it if
+	 * no activity holds it already. Each successful call must be matched by a
+	 * call to {@link #release(Version.ID)}.
+	 */
+	public Dataflow acquire(final Version.ID id) throws ComponentException,
+			InvalidWorkflowException {
+		CanonicalID key = CanonicalID.of(id);
+		synchronized (entries) {
+			Dataflow dataflow = hold(key);
+			if (dataflow != null)
+				return dataflow;
+		}
+
+		Dataflow dataflow;
+		try {
+			dataflow = compiling.execute(key, new Callable<Dataflow>() {
+				@Override
+				public Dataflow call() throws ComponentException,
+						InvalidWorkflowException {
+					logger.info("compiling implementation of " + id);
+					compilations.incrementAndGet();
+					WorkflowBundle implementation = util.getVersion(id)
+							.getImplementation();
+					prefetchNested(id, implementation);
+					return system.compile(implementation);
+				}
+			});
+		} catch (ComponentException | InvalidWorkflowException
+				| RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ComponentException(e.getMessage(), e);
+		}
+
+		synchronized (entries) {
+			/*
+			 * Threads that shared one compilation all arrive here with the
+			 * same dataflow; only the first records it.
+			 */
+			Dataflow held = hold(key);
+			if (held != null)
+				return held;
+			Entry entry = new Entry(key, dataflow, collected);
+			entry.references++;
+			entries.put(key, entry);
+			return dataflow;
+		}
+	}
+
+	/**
+	 * Take another reference to a held dataflow. Must hold the lock on the
+	 * entries.
+	 * 
+	 * @return The dataflow, or <tt>null</tt> if none is held for the key.
+	 */
+	private Dataflow hold(CanonicalID key) {
+		expungeCollected();
+		Entry entry = entries.get(key);
+		if (entry == null)
+			return null;
+		Dataflow dataflow = entry.get();
+		if (dataflow == null) {
+			entries.remove(key);
+			return null;
+		}
+		entry.references++;
+		return dataflow;
+	}
+
+	/**
+	 * Drop the entries of dataflows that have been garbage collected. Must
+	 * hold the lock on the entries.
+	 */
+	private void expungeCollected() {
+		Reference<? extends Dataflow> ref;
+		while ((ref = collected.poll()) != null) {
+			Entry entry = (Entry) ref;
+			if (entries.get(entry.key) == entry)
+				entries.remove(entry.key);
+		}
+	}
+
+	/**
+	 * Load, in one batch, the implementations of the components that a
+	 * component's implementation uses. Failures are only logged; they will
+	 * be met again, and reported, when the component is compiled.
+	 */
+	private void prefetchNested(Version.ID id, WorkflowBundle implementation) {
+		if (implementationCache == null)
+			return;
+		Set<CanonicalID> nested = new LinkedHashSet<>();
+		for (Profile profile : implementation.getProfiles())
+			for (Configuration config : profile.getConfigurations()) {
+				if (!(config.getConfigures() instanceof Activity)
+						|| !COMPONENT_ACTIVITY.equals(((Activity) config
+								.getConfigures()).getType()))
+					continue;
+				try {
+					nested.add(CanonicalID.of(new ComponentActivityConfigurationBean(
+							config.getJson(), util, implementationCache)));
+				} catch (MalformedURLException | RuntimeException e) {
+					logger.warn("bad component configuration in " + id, e);
+				}
+			}
+		if (nested.isEmpty())
+			return;
+		try {
+			implementationCache.prefetch(nested);
+		} catch (ComponentException e) {
+			logger.warn("failed to prefetch components used by " + id, e);
+		}
+	}
+
+	/**
+	 * Say that an activity no longer uses the compiled implementation of a
+	 * component version.
+	 */
+	public void release(Version.ID id) {
+		CanonicalID key = CanonicalID.of(id);
+		synchronized (entries) {
+			expungeCollected();
+			Entry entry = entries.get(key);
+			if (entry != null && --entry.references <= 0)
+				entries.remove(key);
+		}
+	}
+
+	/** @return How many dataflows are held. */
+	public int size() {
+		synchronized (entries) {
+			expungeCollected();
+			return entries.size();
+		}
+	}
+
+	/** @return How many times an implementation has been compiled. */
+	public long getCompilationCount() {
+		return compilations.get();
+	}
+}
@@ -2,10 +2,18 @@ package org.apache.taverna.component;
 
 import static net.sf.taverna.t2.workflowmodel.utils.AnnotationTools.getAnnotationString;
 import static net.sf.taverna.t2.workflowmodel.utils.AnnotationTools.setAnnotationString;
+import static java.util.Collections.synchronizedMap;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.net.MalformedURLException;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import net.sf.taverna.t2.activities.dataflow.DataflowActivity;
 import net.sf.taverna.t2.annotation.annotationbeans.SemanticAnnotation;
@@ -22,11 +30,11 @@ import net.sf.taverna.t2.workflowmodel.processor.activity.AsynchronousActivityCa
 
 import org.slf4j.Logger;
 import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Version;
 import org.apache.taverna.component.api.profile.ExceptionHandling;
 import org.apache.taverna.component.registry.ComponentImplementationCache;
 import org.apache.taverna.component.registry.ComponentUtil;
 import org.apache.taverna.component.utils.AnnotationUtils;
-import org.apache.taverna.component.utils.SystemUtils;
 
 import uk.org.taverna.platform.execution.api.InvalidWorkflowException;
 
@@ -39,22 +47,47 @@ public class ComponentActivity extends
 
 	private ComponentUtil util;
 	private ComponentImplementationCache cache;
-	private volatile DataflowActivity componentRealization;
+	private CompiledDataflowCache compiledDataflows;
+	/** Guards the realization and the generation. */
+	private final Object realizationLock = new Object();
+	private DataflowActivity componentRealization;
+	/**
+	 * The realization once it has a nested dataflow; read without locking, so
+	 * that invocations after the first do not contend with each other.
+	 */
+	private volatile DataflowActivity realized;
 	private JsonNode json;
 	private ComponentActivityConfigurationBean bean;
-	private SystemUtils system;
 	@SuppressWarnings("unused")
 	private AnnotationUtils annUtils;
 	private ComponentExceptionFactory cef;
+	/**
+	 * The empty lists of errors registered for the results of this activity,
+	 * by invocation context (that is, by workflow run). Held weakly, so that
+	 * finished runs are forgotten.
+	 */
+	private final Map<InvocationContext, T2Reference> emptyErrorLists = synchronizedMap(
+			new WeakHashMap<InvocationContext, T2Reference>());
 	
 	private Dataflow realizingDataflow = null;
+	private Version.ID realizedVersion = null;
+	/** Where to realize eagerly; <tt>null</tt> to realize on first use. */
+	private final ExecutorService realizer;
+	private volatile Future<DataflowActivity> pendingRealization;
+	/**
+	 * Counts configurations, so that a realization begun for an earlier one
+	 * is never published.
+	 */
+	private long generation;
 
 	ComponentActivity(ComponentUtil util, ComponentImplementationCache cache,
-			Edits edits, SystemUtils system, AnnotationUtils annUtils,
+			CompiledDataflowCache compiledDataflows, ExecutorService realizer,
+			Edits edits, AnnotationUtils annUtils,
 			ComponentExceptionFactory exnFactory) {
 		this.util = util;
 		this.cache = cache;
-		this.system = system;
+		this.compiledDataflows = compiledDataflows;
+		this.realizer = realizer;
 		this.annUtils = annUtils;
 		setEdits(edits);
 		this.componentRealization = new DataflowActivity();
@@ -64,6 +97,7 @@ public class ComponentActivity extends
 	@Override
 	public void configure(JsonNode json) throws ActivityConfigurationException {
 		this.json = json;
+		discardRealization();
 		try {
 			bean = new ComponentActivityConfigurationBean(json, util, cache);
 		} catch (MalformedURLException e) {
@@ -76,6 +110,31 @@ public class ComponentActivity extends
 			throw new ActivityConfigurationException(
 					"failed to get component realization", e);
 		}
+		if (realizer != null)
+			startRealization();
+	}
+
+	/**
+	 * Begin fetching and compiling the component in the background, so that
+	 * it is (ideally) ready before the first data arrives.
+	 */
+	private void startRealization() {
+		final long gen;
+		synchronized (realizationLock) {
+			gen = generation;
+		}
+		try {
+			pendingRealization = realizer
+					.submit(new Callable<DataflowActivity>() {
+						@Override
+						public DataflowActivity call()
+								throws ActivityConfigurationException {
+							return realize(gen);
+						}
+					});
+		} catch (RejectedExecutionException e) {
+			logger.warn("cannot realize component in background", e);
+		}
 	}
 
 	@Override
@@ -86,7 +145,8 @@ public class ComponentActivity extends
 			// InvocationContextImpl newContext = copyInvocationContext(callback);
 
 			getComponentRealization().executeAsynch(inputs, new ProxyCallback(
-					callback, callback.getContext(), exceptionHandling, cef));
+					callback, callback.getContext(), exceptionHandling, cef,
+					emptyErrorLists));
 		} catch (ActivityConfigurationException e) {
 			callback.fail("Unable to execute component", e);
 		}
@@ -112,17 +172,62 @@ public class ComponentActivity extends
 		return bean;
 	}
 
-	private DataflowActivity getComponentRealization()
+	DataflowActivity getComponentRealization()
+			throws ActivityConfigurationException {
+		DataflowActivity r = realized;
+		if (r != null)
+			return r;
+		Future<DataflowActivity> pending = pendingRealization;
+		if (pending != null)
+			try {
+				return pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ActivityConfigurationException(
+						"interrupted waiting for component realization", e);
+			} catch (ExecutionException | CancellationException e) {
+				/*
+				 * Don't keep reporting a failure that might have been
+				 * transient; try again here, as if realizing lazily.
+				 */
+				logger.warn("background realization of component failed", e);
+				pendingRealization = null;
+			}
+		return realize();
+	}
+
+	private DataflowActivity realize() throws ActivityConfigurationException {
+		synchronized (realizationLock) {
+			return realize(generation);
+		}
+	}
+
+	/**
+	 * @param gen
+	 *            The generation of the configuration being realized.
+	 * @throws CancellationException
+	 *             If the activity has been reconfigured since; cancelling the
+	 *             background task does not stop it once it is running.
+	 */
+	private DataflowActivity realize(long gen)
 			throws ActivityConfigurationException {
-		synchronized (componentRealization) {
+		synchronized (realizationLock) {
+			if (gen != generation)
+				throw new CancellationException("activity reconfigured");
+			if (realized != null)
+				return realized;
 			try {
 				if (componentRealization.getNestedDataflow() == null) {
-					if (realizingDataflow == null)
-						realizingDataflow = system.compile(util
-								.getVersion(bean).getImplementation());
+					if (realizingDataflow == null) {
+						realizingDataflow = compiledDataflows.acquire(bean);
+						realizedVersion = bean;
+					}
 					componentRealization.setNestedDataflow(realizingDataflow);
 					copyAnnotations();
 				}
+				// Publish only once fully set up
+				realized = componentRealization;
+				return componentRealization;
 			} catch (ComponentException e) {
 				logger.error("unable to read workflow", e);
 				throw new ActivityConfigurationException(
@@ -133,8 +238,27 @@ public class ComponentActivity extends
 						"unable to compile workflow", e);
 			}
 		}
-		
-		return componentRealization;
+	}
+
+	/**
+	 * Let go of the realization of the previous configuration, if any.
+	 */
+	private void discardRealization() {
+		Future<DataflowActivity> pending = pendingRealization;
+		if (pending != null) {
+			pending.cancel(false);
+			pendingRealization = null;
+		}
+		synchronized (realizationLock) {
+			generation++;
+			if (realizedVersion == null)
+				return;
+			realized = null;
+			compiledDataflows.release(realizedVersion);
+			realizingDataflow = null;
+			realizedVersion = null;
+			componentRealization = new DataflowActivity();
+		}
 	}
 
 	private void copyAnnotations() {
@@ -1,10 +1,15 @@
 package org.apache.taverna.component;
 
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.taverna.t2.workflowmodel.Edits;
 import net.sf.taverna.t2.workflowmodel.processor.activity.ActivityConfigurationException;
@@ -29,13 +34,18 @@ public class ComponentActivityFactory extends ComponentExceptionFactory
 		implements ActivityFactory {
 	private ComponentUtil util;
 	private ComponentImplementationCache cache;
+	private CompiledDataflowCache compiledDataflows;
 	private Edits edits;
-	private SystemUtils system;
 	private AnnotationUtils annUtils;
+	private boolean eagerRealization = false;
+	private int realizationThreads = 4;
+	private ExecutorService realizer;
 
 	@Override
 	public ComponentActivity createActivity() {
-		return new ComponentActivity(util, cache, edits, system, annUtils, this);
+		return new ComponentActivity(util, cache, compiledDataflows,
+				eagerRealization ? getRealizer() : null, edits, annUtils,
+				this);
 	}
 
 	@Override
@@ -108,14 +118,59 @@ public class ComponentActivityFactory extends ComponentExceptionFactory
 		this.cache = cache;
 	}
 
+	@Required
+	public void setCompiledDataflowCache(CompiledDataflowCache compiledDataflows) {
+		this.compiledDataflows = compiledDataflows;
+	}
+
+	/**
+	 * @param eager
+	 *            Whether activities start fetching and compiling their
+	 *            components in the background as soon as they are
+	 *            configured, rather than when they first receive data.
+	 */
+	public void setEagerRealization(boolean eager) {
+		this.eagerRealization = eager;
+	}
+
+	/**
+	 * @param threads
+	 *            How many components may be realized in the background at
+	 *            once, when realization is eager.
+	 */
+	public void setRealizationThreads(int threads) {
+		this.realizationThreads = threads;
+	}
+
+	private synchronized ExecutorService getRealizer() {
+		if (realizer == null)
+			realizer = newFixedThreadPool(realizationThreads,
+					new ThreadFactory() {
+						private final AtomicInteger counter = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "component-realization-"
+									+ counter.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		return realizer;
+	}
+
 	@Required
 	public void setEdits(Edits edits) {
 		this.edits = edits;
 	}
 
-	@Required
+	/**
+	 * @deprecated Components are compiled by the
+	 *             {@link CompiledDataflowCache}, which is given its own
+	 *             {@link SystemUtils}; this one is ignored.
+	 */
+	@Deprecated
 	public void setSystemUtil(SystemUtils system) {
-		this.system = system;
 	}
 
 	@Required
@@ -6,14 +6,19 @@ package org.apache.taverna.component;
 import static net.sf.taverna.t2.reference.T2ReferenceType.ErrorDocument;
 import static net.sf.taverna.t2.reference.T2ReferenceType.IdentifiedList;
 import static net.sf.taverna.t2.reference.T2ReferenceType.ReferenceSet;
+import static org.apache.taverna.component.ComponentActivityConfigurationBean.ERROR_CHANNEL;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.xml.ws.Holder;
@@ -47,19 +52,32 @@ public class ProxyCallback implements AsynchronousActivityCallback {
 	private final ExceptionHandling exceptionHandling;
 	private final ListService lists;
 	private final ErrorDocumentService errors;
+	/**
+	 * The registered empty lists of errors, by invocation context; shared by
+	 * all the invocations of an activity.
+	 */
+	private final Map<InvocationContext, T2Reference> emptyErrorLists;
 
 	/**
 	 * @param proxiedCallback
 	 * @param invocationContext
 	 * @param exceptionHandling
 	 * @param exnFactory
+	 * @param emptyErrorLists
+	 *            Where to remember the empty list of errors registered for
+	 *            each invocation context. Almost every result has no errors,
+	 *            and registering a fresh empty list for each would write to
+	 *            the reference service every time. Must be safe to use from
+	 *            several threads at once.
 	 */
 	ProxyCallback(AsynchronousActivityCallback proxiedCallback,
 			InvocationContext invocationContext,
 			ExceptionHandling exceptionHandling,
-			ComponentExceptionFactory exnFactory) {
+			ComponentExceptionFactory exnFactory,
+			Map<InvocationContext, T2Reference> emptyErrorLists) {
 		this.proxiedCallback = proxiedCallback;
 		this.exceptionHandling = exceptionHandling;
+		this.emptyErrorLists = emptyErrorLists;
 		context = invocationContext;
 		references = context.getReferenceService();
 		lists = references.getListService();
@@ -84,16 +102,120 @@ public class ProxyCallback implements AsynchronousActivityCallback {
 			return;
 		}
 
+		if (!containsErrors(data)) {
+			proxiedCallback.receiveResult(new WithErrorChannel(data,
+					getEmptyErrorList()), index);
+			return;
+		}
+
 		List<T2Reference> exceptions = new ArrayList<>();
 		Map<String, T2Reference> replacement = new HashMap<>();
 		for (Entry<String, T2Reference> entry : data.entrySet())
 			replacement.put(entry.getKey(),
 					considerReference(entry.getValue(), exceptions));
-		replacement.put("error_channel",
-				references.register(exceptions, 1, true, context));
+		replacement.put(ERROR_CHANNEL,
+				exceptions.isEmpty() ? getEmptyErrorList() : references
+						.register(exceptions, 1, true, context));
 		proxiedCallback.receiveResult(replacement, index);
 	}
 
+	private static boolean containsErrors(Map<String, T2Reference> data) {
+		for (T2Reference value : data.values())
+			if (value.containsErrors())
+				return true;
+		return false;
+	}
+
+	private T2Reference getEmptyErrorList() {
+		T2Reference empty = emptyErrorLists.get(context);
+		if (empty == null) {
+			/*
+			 * Racing threads may each register one; that is harmless, as any of
+			 * them will do.
+			 */
+			empty = references.register(new ArrayList<T2Reference>(), 1,
+					true, context);
+			emptyErrorLists.put(context, empty);
+		}
+		return empty;
+	}
+
+	/**
+	 * A result with the error channel added, as an unmodifiable view rather
+	 * than a copy.
+	 */
+	private static class WithErrorChannel extends
+			AbstractMap<String, T2Reference> {
+		private final Map<String, T2Reference> data;
+		private final Entry<String, T2Reference> errors;
+
+		WithErrorChannel(Map<String, T2Reference> data, T2Reference errors) {
+			this.data = data;
+			this.errors = new SimpleImmutableEntry<>(ERROR_CHANNEL, errors);
+		}
+
+		@Override
+		public T2Reference get(Object key) {
+			return ERROR_CHANNEL.equals(key) ? errors.getValue() : data
+					.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return ERROR_CHANNEL.equals(key) || data.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return data.containsKey(ERROR_CHANNEL) ? data.size()
+					: data.size() + 1;
+		}
+
+		@Override
+		public Set<Entry<String, T2Reference>> entrySet() {
+			return new AbstractSet<Entry<String, T2Reference>>() {
+				@Override
+				public int size() {
+					return WithErrorChannel.this.size();
+				}
+
+				@Override
+				public Iterator<Entry<String, T2Reference>> iterator() {
+					return new Iterator<Entry<String, T2Reference>>() {
+						private final Iterator<Entry<String, T2Reference>> it = data
+								.entrySet().iterator();
+						/** The error channel, until it has been returned. */
+						private Entry<String, T2Reference> last = errors;
+
+						@Override
+						public boolean hasNext() {
+							return last != null;
+						}
+
+						@Override
+						public Entry<String, T2Reference> next() {
+							while (it.hasNext()) {
+								Entry<String, T2Reference> e = it.next();
+								if (!ERROR_CHANNEL.equals(e.getKey()))
+									return new SimpleImmutableEntry<>(e);
+							}
+							if (last == null)
+								throw new NoSuchElementException();
+							Entry<String, T2Reference> e = last;
+							last = null;
+							return e;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+
 	private T2Reference considerReference(T2Reference value,
 			List<T2Reference> exceptions) {
 		if (!value.containsErrors())
@@ -189,10 +311,9 @@ public class ProxyCallback implements AsynchronousActivityCallback {
 
 		considered.add(errorDoc);
 		toConsider.remove(errorDoc);
-		String exceptionMessage = errorDoc.getExceptionMessage();
-		for (HandleException he : exceptionHandling.getHandleExceptions()) {
-			if (!he.matches(exceptionMessage))
-				continue;
+		HandleException he = exceptionHandling.findHandler(errorDoc
+				.getExceptionMessage());
+		if (he != null) {
 			handleException.value = he;
 			found = errorDoc;
 		}
@@ -26,6 +26,8 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static net.sf.taverna.t2.workflowmodel.health.HealthCheck.NO_PROBLEM;
 import static net.sf.taverna.t2.workflowmodel.health.RemoteHealthChecker.contactEndpoint;
+import static org.apache.taverna.component.utils.JAXBUtils.getMarshaller;
+import static org.apache.taverna.component.utils.JAXBUtils.getUnmarshaller;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.FileNotFoundException;
@@ -177,7 +179,7 @@ public class ComponentProfileImpl implements
 			} catch (Exception e) {
 			}
 			try (InputStream is = conn.getInputStream()) {
-				profile.profileDoc = jaxbContext.createUnmarshaller()
+				profile.profileDoc = getUnmarshaller(jaxbContext)
 						.unmarshal(new StreamSource(is), Profile.class)
 						.getValue();
 			}
@@ -197,8 +199,7 @@ public class ComponentProfileImpl implements
 	private static void loadProfileFromString(ComponentProfileImpl profile,
 			String source) {
 		try {
-			profile.profileDoc = jaxbContext
-					.createUnmarshaller()
+			profile.profileDoc = getUnmarshaller(jaxbContext)
 					.unmarshal(new StreamSource(new StringReader(source)),
 							Profile.class).getValue();
 		} catch (Exception e) {
@@ -220,7 +221,7 @@ public class ComponentProfileImpl implements
 	public String getXML() throws ComponentException {
 		try {
 			StringWriter stringWriter = new StringWriter();
-			jaxbContext.createMarshaller().marshal(getProfileDocument(),
+			getMarshaller(jaxbContext).marshal(getProfileDocument(),
 					stringWriter);
 			return stringWriter.toString();
 		} catch (JAXBException e) {
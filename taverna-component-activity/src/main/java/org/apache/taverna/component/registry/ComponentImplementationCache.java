@@ -3,62 +3,338 @@
  */
 package org.apache.taverna.component.registry;
 
+import static java.lang.Boolean.TRUE;
 import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.taverna.component.api.ComponentException;
 import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.api.Version.CanonicalID;
+import org.apache.taverna.component.utils.SingleFlight;
+import org.apache.taverna.component.utils.WeightedCache;
 import org.slf4j.Logger;
 
 import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+import uk.org.taverna.scufl2.api.core.Workflow;
 
 /**
  * @author alanrw
  * 
  */
 public class ComponentImplementationCache {
-	private class Entry {
-		WorkflowBundle implementation;
-		long timestamp;
-	}
-	private final long VALIDITY = 15 * 60 * 1000;
+	/**
+	 * Approximates the size of a bundle by the number of elements in its
+	 * workflows.
+	 */
+	static final WeightedCache.Weigher<WorkflowBundle> BUNDLE_WEIGHER = new WeightedCache.Weigher<WorkflowBundle>() {
+		@Override
+		public long weigh(WorkflowBundle bundle) {
+			long weight = 1;
+			for (Workflow w : bundle.getWorkflows())
+				weight += 1 + w.getProcessors().size()
+						+ w.getDataLinks().size() + w.getInputPorts().size()
+						+ w.getOutputPorts().size();
+			return weight;
+		}
+	};
+	private static final long DEFAULT_MAX_WEIGHT = 50000;
+	private static final long DEFAULT_TIME_TO_LIVE = 15 * 60 * 1000;
+	private static final int REFRESH_THREADS = 2;
 	private final Logger logger = getLogger(ComponentImplementationCache.class);
-	private final Map<Version.ID, Entry> cache = new WeakHashMap<>();
+	private volatile WeightedCache<CanonicalID, WorkflowBundle> cache = new WeightedCache<>(
+			DEFAULT_MAX_WEIGHT, BUNDLE_WEIGHER);
+	private final SingleFlight<CanonicalID, WorkflowBundle> loader = new SingleFlight<>();
+	private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+	private volatile long refreshAhead;
+	private final ConcurrentMap<CanonicalID, Boolean> refreshing = new ConcurrentHashMap<>();
+	private ExecutorService refresher;
+	private final AtomicLong staleServed = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
 	private ComponentUtil utils;
 
 	public void setComponentUtil(ComponentUtil utils) {
 		this.utils = utils;
 	}
 
-	public WorkflowBundle getImplementation(Version.ID id) throws ComponentException {
-		long now = currentTimeMillis();
-		synchronized (id) {
-			Entry entry = cache.get(id);
-			if (entry != null && entry.timestamp >= now)
-				return entry.implementation;
-			logger.info("before calculate component version for " + id);
-			Version componentVersion;
-			try {
-				componentVersion = utils.getVersion(id);
-			} catch (RuntimeException e) {
-				if (entry != null)
-					return entry.implementation;
-				throw new ComponentException(e.getMessage(), e);
+	/**
+	 * @param maxWeight
+	 *            The maximum total size of the implementations to hold,
+	 *            counted in workflow elements (processors, data links and
+	 *            ports). Replaces the current contents of the cache.
+	 */
+	public void setMaxWeight(long maxWeight) {
+		cache = new WeightedCache<>(maxWeight, BUNDLE_WEIGHER);
+	}
+
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) a fetched implementation is used
+	 *            before checking with the registry again.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @param refreshAhead
+	 *            How long (in milliseconds) before an implementation expires
+	 *            to start fetching its replacement in the background; zero
+	 *            (the default) to fetch only once it has expired, making the
+	 *            caller wait. When non-zero, an expired implementation also
+	 *            continues to be served while its replacement is fetched, and
+	 *            for as long as the registry cannot supply one.
+	 */
+	public void setRefreshAhead(long refreshAhead) {
+		this.refreshAhead = refreshAhead;
+	}
+
+	/**
+	 * Get the implementation of a component version. Reading a current
+	 * implementation does not lock. Otherwise, the implementation is fetched
+	 * from the registry; however many threads ask at once for equal
+	 * identifiers, only one fetch is made and they all get its result.
+	 * <p>
+	 * Implementations are held by the {@linkplain CanonicalID canonical form}
+	 * of their identifiers, so looking one up never resolves the registry's
+	 * host name.
+	 */
+	public WorkflowBundle getImplementation(final Version.ID id)
+			throws ComponentException {
+		final CanonicalID key = CanonicalID.of(id);
+		WeightedCache.Entry<WorkflowBundle> entry = cache.getEntry(key);
+		if (entry != null) {
+			long remaining = entry.getExpiry() - currentTimeMillis();
+			if (remaining >= 0) {
+				if (remaining < refreshAhead)
+					refreshInBackground(key, id);
+				return entry.getValue();
+			} else if (refreshAhead > 0) {
+				// Stale while revalidating
+				staleServed.incrementAndGet();
+				refreshInBackground(key, id);
+				return entry.getValue();
 			}
-			logger.info("calculated component version for " + id + " as "
-					+ componentVersion.getVersionNumber() + "; retrieving dataflow");
-			WorkflowBundle implementation = componentVersion.getImplementation();
-			//DataflowValidationReport report = implementation.checkValidity();
-			//logger.info("component version " + id + " incomplete:"
-			//		+ report.isWorkflowIncomplete() + " valid:"
-			//		+ report.isValid());
-			entry = new Entry();
-			entry.implementation = implementation;
-			entry.timestamp = now + VALIDITY;
-			return cache.put(id, entry).implementation;
 		}
+		try {
+			return loader.execute(key, new Callable<WorkflowBundle>() {
+				@Override
+				public WorkflowBundle call() throws ComponentException {
+					return load(key, id);
+				}
+			});
+		} catch (ComponentException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ComponentException(e.getMessage(), e);
+		}
+	}
+
+	private WorkflowBundle load(CanonicalID key, Version.ID id)
+			throws ComponentException {
+		// Another thread may have loaded it since we looked
+		WorkflowBundle implementation = cache.peek(key);
+		if (implementation != null)
+			return implementation;
+		try {
+			return fetch(key, id);
+		} catch (RuntimeException e) {
+			implementation = cache.getStale(key);
+			if (implementation != null)
+				return implementation;
+			throw new ComponentException(e.getMessage(), e);
+		}
+	}
+
+	private WorkflowBundle fetch(CanonicalID key, Version.ID id)
+			throws ComponentException {
+		logger.info("before calculate component version for " + id);
+		Version componentVersion = utils.getVersion(id);
+		logger.info("calculated component version for " + id + " as "
+				+ componentVersion.getVersionNumber() + "; retrieving dataflow");
+		WorkflowBundle implementation = componentVersion.getImplementation();
+		//DataflowValidationReport report = implementation.checkValidity();
+		//logger.info("component version " + id + " incomplete:"
+		//		+ report.isWorkflowIncomplete() + " valid:"
+		//		+ report.isValid());
+		cache.put(key, implementation, timeToLive);
+		return implementation;
+	}
+
+	/**
+	 * Load the implementations of several component versions in one pass, so
+	 * that the activities using them can be set up without each waiting on
+	 * its own registry round trip. Implementations already held, or already
+	 * being loaded, are not fetched again; anyone asking for an
+	 * implementation while the batch is loading it waits for the batch.
+	 * Failures are logged, and will be reported again if the implementation
+	 * is asked for with {@link #getImplementation(Version.ID)}.
+	 * 
+	 * @param ids
+	 *            The component versions whose implementations will be needed.
+	 */
+	public void prefetch(Collection<? extends Version.ID> ids)
+			throws ComponentException {
+		Set<CanonicalID> wanted = new LinkedHashSet<>();
+		for (Version.ID id : ids) {
+			CanonicalID key = CanonicalID.of(id);
+			if (cache.peek(key) == null)
+				wanted.add(key);
+		}
+		if (wanted.isEmpty())
+			return;
+		logger.info("prefetching " + wanted.size()
+				+ " component implementations");
+		try {
+			loader.executeAll(wanted,
+					new SingleFlight.Batch<CanonicalID, WorkflowBundle>() {
+						@Override
+						public Map<CanonicalID, WorkflowBundle> call(
+								Set<CanonicalID> keys,
+								Map<CanonicalID, Exception> failures) {
+							return loadAll(keys, failures);
+						}
+					});
+		} catch (ComponentException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ComponentException(e.getMessage(), e);
+		}
+	}
+
+	private Map<CanonicalID, WorkflowBundle> loadAll(Set<CanonicalID> keys,
+			Map<CanonicalID, Exception> failures) {
+		Map<CanonicalID, WorkflowBundle> loaded = new HashMap<>();
+		Set<CanonicalID> missing = new LinkedHashSet<>();
+		for (CanonicalID key : keys) {
+			// Another thread may have loaded it since we looked
+			WorkflowBundle implementation = cache.peek(key);
+			if (implementation != null)
+				loaded.put(key, implementation);
+			else
+				missing.add(key);
+		}
+		if (missing.isEmpty())
+			return loaded;
+
+		Map<Version.ID, ComponentException> failed = new HashMap<>();
+		Map<Version.ID, Version> versions = utils.getVersions(missing, failed);
+		for (CanonicalID key : missing) {
+			Exception failure = failed.get(key);
+			Version version = versions.get(key);
+			if (version != null)
+				try {
+					WorkflowBundle implementation = version.getImplementation();
+					cache.put(key, implementation, timeToLive);
+					loaded.put(key, implementation);
+					continue;
+				} catch (ComponentException e) {
+					failure = e;
+				}
+			if (failure == null)
+				failure = new ComponentException("no such version: " + key);
+			logger.warn("failed to prefetch implementation of " + key, failure);
+			failures.put(key, failure);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Start fetching a fresh copy of an implementation, unless that is
+	 * already happening. The current copy stays in the cache until the new
+	 * one arrives, and is kept if the fetch fails.
+	 */
+	private void refreshInBackground(final CanonicalID key,
+			final Version.ID id) {
+		if (refreshing.putIfAbsent(key, TRUE) != null)
+			return;
+		try {
+			getRefresher().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						loader.execute(key, new Callable<WorkflowBundle>() {
+							@Override
+							public WorkflowBundle call()
+									throws ComponentException {
+								return fetch(key, id);
+							}
+						});
+					} catch (Exception e) {
+						refreshFailures.incrementAndGet();
+						logger.warn("failed to refresh implementation of " + id
+								+ "; continuing with the previous one", e);
+					} finally {
+						refreshing.remove(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+		}
+	}
+
+	private synchronized ExecutorService getRefresher() {
+		if (refresher == null)
+			refresher = newFixedThreadPool(REFRESH_THREADS, new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "component-implementation-refresh-"
+							+ counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		return refresher;
+	}
+
+	/** @return How many lookups found a current implementation. */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/** @return How many lookups had to go to the registry. */
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/** @return How many implementations were dropped to make room. */
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * @return How many times an expired implementation was served because
+	 *         its replacement had not (yet) been fetched. A count that keeps
+	 *         rising means the registry is not supplying fresh copies.
+	 */
+	public long getStaleServedCount() {
+		return staleServed.get();
+	}
+
+	/** @return How many background refreshes have failed. */
+	public long getRefreshFailureCount() {
+		return refreshFailures.get();
+	}
+
+	/** @return The total size of the implementations held. */
+	public long getWeight() {
+		return cache.getWeight();
 	}
 }
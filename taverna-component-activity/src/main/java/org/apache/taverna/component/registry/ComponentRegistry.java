@@ -20,35 +20,358 @@
  ******************************************************************************/
 package org.apache.taverna.component.registry;
 
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static org.slf4j.LoggerFactory.getLogger;
+
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.taverna.component.api.Component;
 import org.apache.taverna.component.api.ComponentException;
 import org.apache.taverna.component.api.Family;
 import org.apache.taverna.component.api.License;
 import org.apache.taverna.component.api.SharingPolicy;
 import org.apache.taverna.component.api.Version;
 import org.apache.taverna.component.api.profile.Profile;
+import org.slf4j.Logger;
 
 /**
  * A ComponentRegistry contains ComponentFamilies and ComponentProfiles.
+ * <p>
+ * What is known about the registry's families, profiles, permissions and
+ * licenses is held as immutable snapshots; readers just take the current
+ * snapshot, so they never block and never see a change half made. Changes
+ * replace the snapshot with an updated copy. Each snapshot is current for a
+ * {@linkplain #setMetadataTimeToLive(long) limited time}, after which it is
+ * fetched again; items that have not changed keep their identity.
  * 
  * @author David Withers
  */
 public abstract class ComponentRegistry implements
 		org.apache.taverna.component.api.Registry {
-	protected Map<String, Family> familyCache = new HashMap<>();
-	protected List<Profile> profileCache = new ArrayList<>();
-	protected List<SharingPolicy> permissionCache = new ArrayList<>();
-	protected List<License> licenseCache = new ArrayList<>();
+	private static final Logger logger = getLogger(ComponentRegistry.class);
+
+	/**
+	 * Gives the key by which an item is indexed, or <tt>null</tt> if it has
+	 * none.
+	 */
+	private interface Key<T> {
+		String of(T item);
+	}
+
+	private static class Index<T> {
+		final Map<String, T> byKey = new HashMap<>();
+		/** Items with no key; rare, and searched in order. */
+		final List<T> unkeyed = new ArrayList<>();
+	}
+
+	/**
+	 * One version of a snapshot's contents.
+	 */
+	private static class State<T> {
+		final List<T> items;
+		final AtomicReferenceArray<Index<T>> indexes;
+		final long expiry;
+
+		State(List<T> items, int indexCount, long expiry) {
+			this.items = unmodifiableList(items);
+			this.indexes = new AtomicReferenceArray<>(indexCount);
+			this.expiry = expiry;
+		}
+
+		boolean isExpired() {
+			return expiry < currentTimeMillis();
+		}
+	}
+
+	/**
+	 * An immutable list, loaded when first asked for and then replaced as a
+	 * whole whenever it changes or expires.
+	 * <p>
+	 * Items can be looked up by any of the keys the snapshot is made with.
+	 * Each index is built the first time it is used, and belongs to one
+	 * version of the list, so it can never disagree with it.
+	 * <p>
+	 * Once expired, the list is fetched again by one thread while the others
+	 * carry on with the old one (or, with a background refresher, by that);
+	 * a failed refetch leaves the old list in use. A list that could only be
+	 * partly loaded is used until it can be loaded in full, but counts as
+	 * expired at once; a partial refetch is treated as a failure. Items found
+	 * again and
+	 * {@linkplain #unchanged(Object, Object) unchanged} are kept rather than
+	 * replaced, so that those holding them see the same objects.
+	 */
+	private abstract class Snapshot<T> {
+		private final AtomicReference<State<T>> current = new AtomicReference<>();
+		/** Set while a thread is refetching an expired list. */
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		private final List<Key<T>> keys;
+
+		@SafeVarargs
+		Snapshot(Key<T>... keys) {
+			this.keys = asList(keys);
+		}
+
+		private State<T> newState(List<T> items, boolean complete) {
+			return new State<>(items, keys.size(),
+					complete ? expiryFrom(currentTimeMillis()) : Long.MIN_VALUE);
+		}
+
+		private State<T> state() throws ComponentException {
+			State<T> state = current.get();
+			if (state == null)
+				return load();
+			if (state.isExpired() && refreshing.compareAndSet(false, true)) {
+				Executor refresher = metadataRefresher;
+				if (refresher == null)
+					return refresh(state);
+				try {
+					refresher.execute(new Runnable() {
+						@Override
+						public void run() {
+							refresh(current.get());
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					refreshing.set(false);
+					logger.warn("cannot refresh registry metadata in background",
+							e);
+				}
+			}
+			return state;
+		}
+
+		private synchronized State<T> load() throws ComponentException {
+			State<T> state = current.get();
+			if (state != null)
+				return state;
+			List<T> loaded = new ArrayList<>();
+			state = newState(loaded, populate(loaded));
+			if (!current.compareAndSet(null, state))
+				state = current.get();
+			return state;
+		}
+
+		/**
+		 * Fetch the list again. Must hold the {@link #refreshing} flag, which
+		 * this releases.
+		 * 
+		 * @return The state to use.
+		 */
+		private State<T> refresh(State<T> old) {
+			try {
+				List<T> loaded = new ArrayList<>();
+				if (!populate(loaded)) {
+					logger.warn("could only partly refresh registry metadata for "
+							+ registryBase + "; using what we had");
+					return old;
+				}
+				State<T> fresh = newState(retain(old.items, loaded), true);
+				// Lose to any change made meanwhile; it is newer than we are
+				if (current.compareAndSet(old, fresh))
+					return fresh;
+			} catch (ComponentException | RuntimeException e) {
+				logger.warn("failed to refresh registry metadata for "
+						+ registryBase + "; using what we had", e);
+			} finally {
+				refreshing.set(false);
+			}
+			return current.get();
+		}
+
+		/**
+		 * @return The fresh items, except where they are the same as old ones,
+		 *         which are used instead.
+		 */
+		private List<T> retain(List<T> oldItems, List<T> freshItems) {
+			Map<T, T> old = new HashMap<>();
+			for (T item : oldItems)
+				old.put(item, item);
+			List<T> result = new ArrayList<>(freshItems.size());
+			for (T item : freshItems) {
+				T existing = old.get(item);
+				result.add(existing != null && unchanged(existing, item) ? existing
+						: item);
+			}
+			return result;
+		}
+
+		/**
+		 * Whether an item fetched again, which is equal to one fetched before,
+		 * is otherwise unchanged; by default, it is.
+		 */
+		protected boolean unchanged(T old, T fresh) {
+			return true;
+		}
+
+		List<T> get() throws ComponentException {
+			return state().items;
+		}
+
+		/**
+		 * Find the first item whose key (of the given kind) is as given.
+		 * 
+		 * @param index
+		 *            Which of the snapshot's keys to use.
+		 */
+		T lookup(int index, String key) throws ComponentException {
+			State<T> state = state();
+			Index<T> idx = state.indexes.get(index);
+			if (idx == null) {
+				// Racing builders make equal indexes, so either will do
+				idx = new Index<>();
+				Key<T> k = keys.get(index);
+				for (T item : state.items) {
+					String itemKey = k.of(item);
+					if (itemKey == null)
+						idx.unkeyed.add(item);
+					else if (!idx.byKey.containsKey(itemKey))
+						idx.byKey.put(itemKey, item);
+				}
+				state.indexes.set(index, idx);
+			}
+			T item = idx.byKey.get(key);
+			if (item != null)
+				return item;
+			// Keys can be missing because they could not be read when indexed
+			for (T candidate : idx.unkeyed)
+				if (key.equals(keys.get(index).of(candidate)))
+					return candidate;
+			return null;
+		}
+
+		void add(T item) throws ComponentException {
+			State<T> state, updated;
+			do {
+				state = state();
+				List<T> copy = new ArrayList<>(state.items);
+				copy.add(item);
+				updated = new State<>(copy, keys.size(), state.expiry);
+			} while (!current.compareAndSet(state, updated));
+		}
+
+		void remove(T item) throws ComponentException {
+			State<T> state, updated;
+			do {
+				state = state();
+				List<T> copy = new ArrayList<>(state.items);
+				if (!copy.remove(item))
+					return;
+				updated = new State<>(copy, keys.size(), state.expiry);
+			} while (!current.compareAndSet(state, updated));
+		}
+
+		/** Mark the snapshot as expired, if it is loaded. */
+		void expire() {
+			State<T> state;
+			do {
+				state = current.get();
+				if (state == null || state.isExpired())
+					return;
+			} while (!current.compareAndSet(state, new State<>(state.items,
+					keys.size(), Long.MIN_VALUE)));
+		}
+
+		/**
+		 * Load the items.
+		 * 
+		 * @return Whether all of them could be loaded.
+		 */
+		protected abstract boolean populate(List<T> items)
+				throws ComponentException;
+	}
+
+	private static final Key<Family> FAMILY_NAME = new Key<Family>() {
+		@Override
+		public String of(Family family) {
+			return family.getName();
+		}
+	};
+	private static final Key<Profile> PROFILE_ID = new Key<Profile>() {
+		@Override
+		public String of(Profile profile) {
+			return profile.getId();
+		}
+	};
+	private static final Key<Profile> PROFILE_NAME = new Key<Profile>() {
+		@Override
+		public String of(Profile profile) {
+			return profile.getName();
+		}
+	};
+	private static final Key<License> LICENSE_ABBREVIATION = new Key<License>() {
+		@Override
+		public String of(License license) {
+			return license.getAbbreviation();
+		}
+	};
+	/** Index of {@link #familyCache}. */
+	private static final int BY_FAMILY_NAME = 0;
+	/** Indexes of {@link #profileCache}. */
+	private static final int BY_ID = 0, BY_NAME = 1;
+	/** Index of {@link #licenseCache}. */
+	private static final int BY_ABBREVIATION = 0;
+
+	private final Snapshot<Family> familyCache = new Snapshot<Family>(
+			FAMILY_NAME) {
+		@Override
+		protected boolean populate(List<Family> items) throws ComponentException {
+			Map<String, Family> families = new LinkedHashMap<>();
+			boolean complete = populateFamilyCache(families);
+			items.addAll(families.values());
+			return complete;
+		}
+
+		@Override
+		protected boolean unchanged(Family old, Family fresh) {
+			return equal(old.getName(), fresh.getName())
+					&& equal(old.getDescription(), fresh.getDescription());
+		}
+	};
+	private final Snapshot<Profile> profileCache = new Snapshot<Profile>(
+			PROFILE_ID, PROFILE_NAME) {
+		@Override
+		protected boolean populate(List<Profile> items) throws ComponentException {
+			populateProfileCache(items);
+			return true;
+		}
+	};
+	private final Snapshot<SharingPolicy> permissionCache = new Snapshot<SharingPolicy>() {
+		@Override
+		protected boolean populate(List<SharingPolicy> items)
+				throws ComponentException {
+			populatePermissionCache(items);
+			return true;
+		}
+	};
+	private final Snapshot<License> licenseCache = new Snapshot<License>(
+			LICENSE_ABBREVIATION) {
+		@Override
+		protected boolean populate(List<License> items)
+				throws ComponentException {
+			populateLicenseCache(items);
+			return true;
+		}
+	};
 
 	private URL registryBase;
+	private volatile long metadataTimeToLive = -1;
+	private volatile Executor metadataRefresher;
 
 	protected ComponentRegistry(URL registryBase) throws ComponentException {
 		this.registryBase = registryBase;
@@ -62,26 +385,71 @@ public abstract class ComponentRegistry implements
 		}
 	}
 
-	@Override
-	public final List<Family> getComponentFamilies() throws ComponentException {
-		checkFamilyCache();
-		return new ArrayList<Family>(familyCache.values());
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
-	private void checkFamilyCache() throws ComponentException {
-		synchronized (familyCache) {
-			if (familyCache.isEmpty())
-				populateFamilyCache();
-		}
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) what is known about the families,
+	 *            profiles, permissions and licenses of the registry is used
+	 *            before being fetched again; negative to keep it for as long
+	 *            as the registry is in use. Applies from the next fetch.
+	 */
+	public void setMetadataTimeToLive(long timeToLive) {
+		this.metadataTimeToLive = timeToLive;
+	}
+
+	/**
+	 * @param refresher
+	 *            Where to fetch expired metadata again; the expired metadata
+	 *            is used meanwhile. If <tt>null</tt>, the first thread to find
+	 *            the metadata expired fetches it again itself.
+	 */
+	public void setMetadataRefresher(Executor refresher) {
+		this.metadataRefresher = refresher;
 	}
 
-	protected abstract void populateFamilyCache() throws ComponentException;
+	private long expiryFrom(long now) {
+		long ttl = metadataTimeToLive;
+		if (ttl < 0 || now + ttl < now)
+			return Long.MAX_VALUE;
+		return now + ttl;
+	}
+
+	/**
+	 * Have what is known about the families, profiles, permissions and
+	 * licenses of the registry fetched again when next used.
+	 */
+	public void expireMetadata() {
+		familyCache.expire();
+		profileCache.expire();
+		permissionCache.expire();
+		licenseCache.expire();
+	}
+
+	@Override
+	public final List<Family> getComponentFamilies() throws ComponentException {
+		return new ArrayList<Family>(familyCache.get());
+	}
+
+	/**
+	 * Load the families of the registry.
+	 * 
+	 * @param families
+	 *            Where to put the families, by name.
+	 * @return Whether all the families could be listed. If not, those that
+	 *         were are used until a full listing can be had.
+	 */
+	protected abstract boolean populateFamilyCache(Map<String, Family> families)
+			throws ComponentException;
 
 	@Override
 	public final Family getComponentFamily(String familyName)
 			throws ComponentException {
-		checkFamilyCache();
-		return familyCache.get(familyName);
+		if (familyName == null)
+			return null;
+		return familyCache.lookup(BY_FAMILY_NAME, familyName);
 	}
 
 	@Override
@@ -98,10 +466,7 @@ public abstract class ComponentRegistry implements
 
 		Family result = internalCreateComponentFamily(familyName,
 				componentProfile, description, license, sharingPolicy);
-		checkFamilyCache();
-		synchronized (familyCache) {
-			familyCache.put(familyName, result);
-		}
+		familyCache.add(result);
 		return result;
 	}
 
@@ -113,10 +478,9 @@ public abstract class ComponentRegistry implements
 	public final void removeComponentFamily(Family componentFamily)
 			throws ComponentException {
 		if (componentFamily != null) {
-			checkFamilyCache();
-			synchronized (familyCache) {
-				familyCache.remove(componentFamily.getName());
-			}
+			Family cached = getComponentFamily(componentFamily.getName());
+			if (cached != null)
+				familyCache.remove(cached);
 			internalRemoveComponentFamily(componentFamily);
 		}
 	}
@@ -137,29 +501,39 @@ public abstract class ComponentRegistry implements
 		return urlString;
 	}
 
-	private void checkProfileCache() throws ComponentException {
-		synchronized (profileCache) {
-			if (profileCache.isEmpty())
-				populateProfileCache();
-		}
-	}
-
-	protected abstract void populateProfileCache() throws ComponentException;
+	/**
+	 * Load the profiles of the registry.
+	 * 
+	 * @param profiles
+	 *            Where to put the profiles.
+	 */
+	protected abstract void populateProfileCache(List<Profile> profiles)
+			throws ComponentException;
 
 	@Override
 	public final List<Profile> getComponentProfiles() throws ComponentException {
-		checkProfileCache();
-		return profileCache;
+		return profileCache.get();
 	}
 
 	@Override
 	public final Profile getComponentProfile(String id)
 			throws ComponentException {
-		// TODO use a map instead of a *linear search*...
-		for (Profile p : getComponentProfiles())
-			if (p.getId().equals(id))
-				return p;
-		return null;
+		if (id == null)
+			return null;
+		return profileCache.lookup(BY_ID, id);
+	}
+
+	/**
+	 * Returns the ComponentProfile with the given name in this registry.
+	 * 
+	 * @return The first profile with that name, or <tt>null</tt> if there is
+	 *         none.
+	 */
+	public final Profile getComponentProfileByName(String name)
+			throws ComponentException {
+		if (name == null)
+			return null;
+		return profileCache.lookup(BY_NAME, name);
 	}
 
 	@Override
@@ -169,20 +543,11 @@ public abstract class ComponentRegistry implements
 		if (componentProfile == null) {
 			throw new ComponentException("componentProfile is null");
 		}
-		Profile result = null;
-		checkProfileCache();
-		for (Profile p : getComponentProfiles())
-			if (p.getId().equals(componentProfile.getId())) {
-				result = p;
-				break;
-			}
-
+		Profile result = getComponentProfile(componentProfile.getId());
 		if (result == null) {
 			result = internalAddComponentProfile(componentProfile, license,
 					sharingPolicy);
-			synchronized (profileCache) {
-				profileCache.add(result);
-			}
+			profileCache.add(result);
 		}
 		return result;
 	}
@@ -191,43 +556,43 @@ public abstract class ComponentRegistry implements
 			Profile componentProfile, License license,
 			SharingPolicy sharingPolicy) throws ComponentException;
 
-	private void checkPermissionCache() {
-		synchronized (permissionCache) {
-			if (permissionCache.isEmpty())
-				populatePermissionCache();
-		}
-	}
-
-	protected abstract void populatePermissionCache();
+	/**
+	 * Load the sharing policies supported by the registry.
+	 * 
+	 * @param permissions
+	 *            Where to put the policies.
+	 * @throws ComponentException
+	 *             If they cannot all be loaded; they will be asked for again.
+	 */
+	protected abstract void populatePermissionCache(
+			List<SharingPolicy> permissions) throws ComponentException;
 
 	@Override
 	public final List<SharingPolicy> getPermissions() throws ComponentException {
-		checkPermissionCache();
-		return permissionCache;
+		return permissionCache.get();
 	}
 
-	private void checkLicenseCache() {
-		synchronized (licenseCache) {
-			if (licenseCache.isEmpty())
-				populateLicenseCache();
-		}
-	}
-
-	protected abstract void populateLicenseCache();
+	/**
+	 * Load the licenses supported by the registry.
+	 * 
+	 * @param licenses
+	 *            Where to put the licenses.
+	 * @throws ComponentException
+	 *             If they cannot all be loaded; they will be asked for again.
+	 */
+	protected abstract void populateLicenseCache(List<License> licenses)
+			throws ComponentException;
 
 	@Override
 	public final List<License> getLicenses() throws ComponentException {
-		checkLicenseCache();
-		return licenseCache;
+		return licenseCache.get();
 	}
 
 	protected License getLicenseByAbbreviation(String licenseString)
 			throws ComponentException {
-		checkLicenseCache();
-		for (License l : getLicenses())
-			if (l.getAbbreviation().equals(licenseString))
-				return l;
-		return null;
+		if (licenseString == null)
+			return null;
+		return licenseCache.lookup(BY_ABBREVIATION, licenseString);
 	}
 
 	@Override
@@ -237,6 +602,56 @@ public abstract class ComponentRegistry implements
 	public abstract Set<Version.ID> searchForComponents(String prefixString,
 			String text) throws ComponentException;
 
+	/**
+	 * Look up several component versions at once, loading their
+	 * implementations so that later use of them need not wait for the
+	 * registry.
+	 * 
+	 * @param ids
+	 *            The versions to look up; they should all be in this registry.
+	 * @param failures
+	 *            Where to put how the lookup of each version that could not be
+	 *            found or loaded went wrong.
+	 * @return The versions that were found, keyed by identifier.
+	 * @throws ComponentException
+	 *             If the lookup as a whole cannot be done.
+	 */
+	public Map<Version.ID, Version> getComponentVersions(
+			Collection<? extends Version.ID> ids,
+			Map<Version.ID, ComponentException> failures)
+			throws ComponentException {
+		Map<Version.ID, Version> result = new LinkedHashMap<>();
+		for (Version.ID id : ids)
+			try {
+				result.put(id, loadComponentVersion(id));
+			} catch (ComponentException e) {
+				failures.put(id, e);
+			}
+		return result;
+	}
+
+	/**
+	 * Look up a component version and load its implementation.
+	 */
+	protected Version loadComponentVersion(Version.ID id)
+			throws ComponentException {
+		Family family = getComponentFamily(id.getFamilyName());
+		if (family == null)
+			throw new ComponentException("no such family: "
+					+ id.getFamilyName());
+		Component component = family.getComponent(id.getComponentName());
+		if (component == null)
+			throw new ComponentException("no such component: "
+					+ id.getComponentName());
+		Version version = component.getComponentVersion(id
+				.getComponentVersion());
+		if (version == null)
+			throw new ComponentException("no such version: "
+					+ id.getComponentVersion());
+		version.getImplementation();
+		return version;
+	}
+
 	@Override
 	public String toString() {
 		String[] names = getClass().getName().split("\\.");
@@ -1,8 +1,14 @@
 package org.apache.taverna.component.registry;
 
 import java.net.URL;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.taverna.component.api.Component;
 import org.apache.taverna.component.api.ComponentException;
@@ -15,6 +21,7 @@ import org.apache.taverna.component.profile.BaseProfileLocator;
 import org.apache.taverna.component.profile.ComponentProfileImpl;
 import org.apache.taverna.component.registry.local.LocalComponentRegistryFactory;
 import org.apache.taverna.component.registry.standard.NewComponentRegistryFactory;
+import org.apache.taverna.component.utils.SingleFlight;
 import org.springframework.beans.factory.annotation.Required;
 
 /**
@@ -26,7 +33,8 @@ public class ComponentUtil implements ComponentFactory {
 	private BaseProfileLocator base;
 	private LocalComponentRegistryFactory fileLocator;
 
-	private final Map<String, Registry> cache = new HashMap<>();
+	private final ConcurrentMap<String, Registry> cache = new ConcurrentHashMap<>();
+	private final SingleFlight<String, Registry> resolving = new SingleFlight<>();
 
 	@Required
 	public void setNetworkLocator(NewComponentRegistryFactory locator) {
@@ -43,21 +51,52 @@ public class ComponentUtil implements ComponentFactory {
 		this.base = base;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Safe to call from many threads at once; a registry that is not yet
+	 * known is looked up (and verified) by one of them, and the others wait
+	 * for that.
+	 */
 	@Override
-	public Registry getRegistry(URL registryBase) throws ComponentException {
-		Registry registry = cache.get(registryBase.toString());
+	public Registry getRegistry(final URL registryBase)
+			throws ComponentException {
+		final String key = registryBase.toString();
+		Registry registry = cache.get(key);
 		if (registry != null)
 			return registry;
 
-		if (registryBase.getProtocol().startsWith("http")) {
-			if (!netLocator.verifyBase(registryBase))
-				throw new ComponentException(
-						"Unable to establish credentials for " + registryBase);
-			registry = netLocator.getComponentRegistry(registryBase);
-		} else
-			registry = fileLocator.getComponentRegistry(registryBase);
-		cache.put(registryBase.toString(), registry);
-		return registry;
+		try {
+			return resolving.execute(key, new Callable<Registry>() {
+				@Override
+				public Registry call() throws ComponentException {
+					Registry resolved = cache.get(key);
+					if (resolved == null) {
+						resolved = resolveRegistry(registryBase);
+						cache.put(key, resolved);
+					}
+					return resolved;
+				}
+			});
+		} catch (ComponentException | RuntimeException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ComponentException("interrupted while looking up "
+					+ registryBase, e);
+		} catch (Exception e) {
+			throw new ComponentException(e.getMessage(), e);
+		}
+	}
+
+	private Registry resolveRegistry(URL registryBase)
+			throws ComponentException {
+		if (!registryBase.getProtocol().startsWith("http"))
+			return fileLocator.getComponentRegistry(registryBase);
+		if (!netLocator.verifyBase(registryBase))
+			throw new ComponentException(
+					"Unable to establish credentials for " + registryBase);
+		return netLocator.getComponentRegistry(registryBase);
 	}
 
 	@Override
@@ -88,6 +127,63 @@ public class ComponentUtil implements ComponentFactory {
 				ident.getComponentName(), ident.getComponentVersion());
 	}
 
+	/**
+	 * Look up several component versions at once, possibly from several
+	 * registries, loading their implementations. Each registry is asked for
+	 * all of its versions in one batch.
+	 * 
+	 * @param idents
+	 *            The versions to look up.
+	 * @param failures
+	 *            Where to put how the lookup of each version that could not be
+	 *            found or loaded went wrong.
+	 * @return The versions that were found, keyed by identifier.
+	 */
+	public Map<Version.ID, Version> getVersions(
+			Collection<? extends Version.ID> idents,
+			Map<Version.ID, ComponentException> failures) {
+		Map<String, List<Version.ID>> byRegistry = new LinkedHashMap<>();
+		for (Version.ID ident : idents) {
+			String key = ident.getRegistryBase().toString();
+			List<Version.ID> group = byRegistry.get(key);
+			if (group == null) {
+				group = new ArrayList<>();
+				byRegistry.put(key, group);
+			}
+			group.add(ident);
+		}
+
+		Map<Version.ID, Version> result = new LinkedHashMap<>();
+		for (List<Version.ID> group : byRegistry.values()) {
+			Registry registry;
+			try {
+				registry = getRegistry(group.get(0).getRegistryBase());
+			} catch (ComponentException e) {
+				for (Version.ID ident : group)
+					failures.put(ident, e);
+				continue;
+			}
+			if (registry instanceof ComponentRegistry) {
+				try {
+					result.putAll(((ComponentRegistry) registry)
+							.getComponentVersions(group, failures));
+				} catch (ComponentException e) {
+					for (Version.ID ident : group)
+						if (!result.containsKey(ident))
+							failures.put(ident, e);
+				}
+				continue;
+			}
+			for (Version.ID ident : group)
+				try {
+					result.put(ident, getVersion(ident));
+				} catch (ComponentException e) {
+					failures.put(ident, e);
+				}
+		}
+		return result;
+	}
+
 	@Override
 	public Component getComponent(Version.ID ident) throws ComponentException {
 		return getComponent(ident.getRegistryBase(), ident.getFamilyName(),
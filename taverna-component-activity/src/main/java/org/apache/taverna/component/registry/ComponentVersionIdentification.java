@@ -118,8 +118,11 @@ public class ComponentVersionIdentification implements
 				+ ((componentVersion == null) ? 0 : componentVersion.hashCode());
 		result = prime * result
 				+ ((familyName == null) ? 0 : familyName.hashCode());
-		result = prime * result
-				+ ((registryBase == null) ? 0 : registryBase.hashCode());
+		// NB: Hash the string form of the URL, as equality uses it
+		result = prime
+				* result
+				+ ((registryBase == null) ? 0 : registryBase.toString()
+						.hashCode());
 		return result;
 	}
 
@@ -52,10 +52,7 @@ class LocalComponentFamily extends ComponentFamily {
 		} catch (IOException e) {
 			throw new ComponentException("Unable to read profile name", e);
 		}
-		for (Profile p : parentRegistry.getComponentProfiles())
-			if (p.getName().equals(profileName))
-				return p;
-		return null;
+		return parentRegistry.getComponentProfileByName(profileName);
 	}
 
 	@Override
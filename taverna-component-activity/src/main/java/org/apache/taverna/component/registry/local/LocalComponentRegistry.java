@@ -11,6 +11,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.taverna.component.api.ComponentException;
@@ -68,25 +70,28 @@ class LocalComponentRegistry extends ComponentRegistry {
 	}
 
 	@Override
-	protected void populateFamilyCache() throws ComponentException {
+	protected boolean populateFamilyCache(Map<String, Family> families)
+			throws ComponentException {
 		File familiesDir = getComponentFamiliesDir();
 		for (File subFile : familiesDir.listFiles()) {
 			if (!subFile.isDirectory())
 				continue;
 			LocalComponentFamily newFamily = new LocalComponentFamily(this,
 					subFile, util, system);
-			familyCache.put(newFamily.getName(), newFamily);
+			families.put(newFamily.getName(), newFamily);
 		}
+		return true;
 	}
 
 	@Override
-	protected void populateProfileCache() throws ComponentException {
+	protected void populateProfileCache(List<Profile> profiles)
+			throws ComponentException {
 		File profilesDir = getComponentProfilesDir();
 		for (File subFile : profilesDir.listFiles())
 			if (subFile.isFile() && (!subFile.isHidden())
 					&& subFile.getName().endsWith(".xml"))
 				try {
-					profileCache.add(new LocalComponentProfile(subFile));
+					profiles.add(new LocalComponentProfile(subFile));
 				} catch (MalformedURLException e) {
 					logger.error("Unable to read profile", e);
 				}
@@ -161,12 +166,12 @@ class LocalComponentRegistry extends ComponentRegistry {
 	}
 
 	@Override
-	public void populatePermissionCache() {
+	public void populatePermissionCache(List<SharingPolicy> permissions) {
 		return;
 	}
 
 	@Override
-	public void populateLicenseCache() {
+	public void populateLicenseCache(List<License> licenses) {
 		return;
 	}
 
@@ -16,6 +16,7 @@ public class LocalComponentRegistryFactory {
 	private final Map<File, Registry> registries = new HashMap<>();
 	private ComponentUtil util;
 	private SystemUtils system;
+	private long metadataTimeToLive = -1;
 
 	@Required
 	public void setComponentUtil(ComponentUtil util) {
@@ -27,11 +28,25 @@ public class LocalComponentRegistryFactory {
 		this.system = system;
 	}
 
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) to use the lists of families and
+	 *            profiles read from a registry before reading them again, to
+	 *            see changes made by others; negative to never read them
+	 *            again.
+	 */
+	public void setMetadataTimeToLive(long timeToLive) {
+		this.metadataTimeToLive = timeToLive;
+	}
+
 	public synchronized Registry getComponentRegistry(File registryDir)
 			throws ComponentException {
-		if (!registries.containsKey(registryDir))
-			registries.put(registryDir, new LocalComponentRegistry(registryDir,
-					util, system));
+		if (!registries.containsKey(registryDir)) {
+			LocalComponentRegistry registry = new LocalComponentRegistry(
+					registryDir, util, system);
+			registry.setMetadataTimeToLive(metadataTimeToLive);
+			registries.put(registryDir, registry);
+		}
 		return registries.get(registryDir);
 	}
 
@@ -0,0 +1,93 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.io.IOException;
+
+/**
+ * Stops requests being sent to a registry that appears to be down. After a
+ * number of consecutive failures the breaker <i>opens</i>, and requests fail
+ * immediately without touching the network. Once the open period has passed, a
+ * single trial request is let through; if it succeeds the breaker closes, and
+ * if it fails the breaker opens again.
+ * 
+ * @author Donal Fellows
+ */
+class CircuitBreaker {
+	/**
+	 * Thrown instead of making a request while the breaker is open.
+	 */
+	static class OpenException extends IOException {
+		private static final long serialVersionUID = -6193419573962531712L;
+
+		OpenException(String message) {
+			super(message);
+		}
+	}
+
+	private final String name;
+	private final int threshold;
+	private final long openTime;
+	private int failures;
+	private long openUntil;
+	private boolean trialInProgress;
+
+	/**
+	 * @param name
+	 *            What the breaker protects, for messages.
+	 * @param threshold
+	 *            How many consecutive failures open the breaker. Zero or less
+	 *            means never open.
+	 * @param openTime
+	 *            How long (in milliseconds) the breaker stays open before
+	 *            letting a trial request through.
+	 */
+	CircuitBreaker(String name, int threshold, long openTime) {
+		this.name = name;
+		this.threshold = threshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Ask permission to make a request. Each call that returns normally must
+	 * be followed by a call to {@link #recordSuccess()},
+	 * {@link #recordFailure()} or {@link #recordNotMade()}.
+	 * 
+	 * @throws OpenException
+	 *             If the request must not be made.
+	 */
+	synchronized void checkAllowed() throws OpenException {
+		if (threshold <= 0 || failures < threshold)
+			return;
+		if (trialInProgress || currentTimeMillis() < openUntil)
+			throw new OpenException("not contacting " + name + " after "
+					+ failures + " consecutive failures");
+		trialInProgress = true;
+	}
+
+	/** Say that the server answered, even if only to refuse the request. */
+	synchronized void recordSuccess() {
+		failures = 0;
+		trialInProgress = false;
+	}
+
+	/** Say that the server could not be reached or failed internally. */
+	synchronized void recordFailure() {
+		failures++;
+		trialInProgress = false;
+		if (threshold > 0 && failures >= threshold)
+			openUntil = currentTimeMillis() + openTime;
+	}
+
+	/**
+	 * Say that the request was given up before it reached the server, so
+	 * tells us nothing about it.
+	 */
+	synchronized void recordNotMade() {
+		trialInProgress = false;
+	}
+
+	synchronized boolean isOpen() {
+		return threshold > 0 && failures >= threshold;
+	}
+}
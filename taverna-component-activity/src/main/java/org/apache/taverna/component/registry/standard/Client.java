@@ -9,6 +9,7 @@ import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
 import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
@@ -16,8 +17,11 @@ import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
 import static java.net.HttpURLConnection.HTTP_USE_PROXY;
 import static java.net.URLEncoder.encode;
 import static javax.xml.bind.DatatypeConverter.printBase64Binary;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
 import static org.apache.commons.io.IOUtils.copy;
 import static org.apache.taverna.component.registry.ClientVersion.VERSION;
+import static org.apache.taverna.component.registry.standard.ConditionalGetCache.key;
+import static org.apache.taverna.component.utils.JAXBUtils.createXMLStreamReader;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.BufferedInputStream;
@@ -26,6 +30,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringWriter;
@@ -34,15 +40,22 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import net.sf.taverna.t2.security.credentialmanager.CMException;
 import net.sf.taverna.t2.security.credentialmanager.CredentialManager;
@@ -52,10 +65,9 @@ import org.apache.commons.io.IOUtils;
 import org.apache.taverna.component.api.ComponentException;
 import org.apache.taverna.component.registry.standard.Client.MyExperimentConnector.ServerResponse;
 import org.apache.taverna.component.registry.standard.annotations.Unused;
+import org.apache.taverna.component.utils.JAXBUtils;
+import org.apache.taverna.component.utils.SingleFlight;
 import org.slf4j.Logger;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
 
 /**
  * The client for MyExperiment (or other deployments of the same codebase). This
@@ -68,6 +80,11 @@ import org.xml.sax.SAXException;
  */
 class Client {
 	private static final int REDIRECT_LIMIT = 5;
+	private static final int REDIRECT_CACHE_SIZE = 256;
+	/** Not defined in {@link HttpURLConnection}; see RFC 7538. */
+	static final int HTTP_PERMANENT_REDIRECT = 308;
+	/** Not defined in {@link HttpURLConnection}. */
+	static final int HTTP_TEMPORARY_REDIRECT = 307;
 	private static final String API_VERIFICATION_RESOURCE = "/component-profiles.xml";
 	private static final String WHOAMI = "/whoami.xml";
 	private static final String PLUGIN_USER_AGENT = "Taverna2-Component-plugin/"
@@ -78,20 +95,41 @@ class Client {
 	private final URL registryBase;
 	private final JAXBContext jaxbContext;
 	private final CredentialManager cm;
-	private final DocumentBuilderFactory dbf;
+	private final Transport transport;
+	private final ConditionalGetCache responseCache;
+	private final Compression compression;
+	private final ExecutorService executor;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker breaker;
+	private final SingleFlight<String, Object> inFlight = new SingleFlight<>();
+	private final RedirectCache redirects = new RedirectCache(
+			REDIRECT_CACHE_SIZE);
+	private final AtomicLong redirectHops = new AtomicLong();
+	private final AtomicLong redirectsSkipped = new AtomicLong();
 
-	Client(JAXBContext context, URL repository, CredentialManager cm)
+	Client(JAXBContext context, URL repository, CredentialManager cm,
+			Transport transport, ConditionalGetCache responseCache,
+			Compression compression, ExecutorService executor,
+			RetryPolicy retryPolicy, CircuitBreaker breaker)
 			throws ComponentException {
-		this(context, repository, true, cm);
+		this(context, repository, true, cm, transport, responseCache,
+				compression, executor, retryPolicy, breaker);
 	}
 
 	Client(JAXBContext context, URL repository, boolean tryLogIn,
-			CredentialManager cm) throws ComponentException {
+			CredentialManager cm, Transport transport,
+			ConditionalGetCache responseCache, Compression compression,
+			ExecutorService executor, RetryPolicy retryPolicy,
+			CircuitBreaker breaker) throws ComponentException {
 		this.cm = cm;
 		this.registryBase = repository;
 		this.jaxbContext = context;
-		this.dbf = DocumentBuilderFactory.newInstance();
-		dbf.setNamespaceAware(false);
+		this.transport = transport;
+		this.responseCache = responseCache;
+		this.compression = compression;
+		this.executor = executor;
+		this.retryPolicy = retryPolicy;
+		this.breaker = breaker;
 		this.http = new MyExperimentConnector(tryLogIn);
 		logger.info("instantiated client connection engine to " + repository);
 	}
@@ -144,11 +182,11 @@ class Client {
 	}
 
 	private Marshaller getMarshaller() throws JAXBException {
-		return jaxbContext.createMarshaller();
+		return JAXBUtils.getMarshaller(jaxbContext);
 	}
 
 	private Unmarshaller getUnmarshaller() throws JAXBException {
-		return jaxbContext.createUnmarshaller();
+		return JAXBUtils.getUnmarshaller(jaxbContext);
 	}
 
 	/**
@@ -166,30 +204,26 @@ class Client {
 	 * @throws ComponentException
 	 *             If anything goes wrong.
 	 */
-	public <T> T get(Class<T> clazz, String uri, String... query)
+	public <T> T get(final Class<T> clazz, String uri, String... query)
 			throws ComponentException {
 		try {
-			int redirectCounter = 0;
-
-			String url = url(uri, query);
-			ServerResponse response;
-			do {
-				if (redirectCounter++ > REDIRECT_LIMIT)
-					throw new ComponentException("too many redirects!");
-				logger.info("GET of " + url);
-				response = http.GET(url);
-				if (response.isFailure())
-					throw new ComponentException(
-							"Unable to perform request (%d): %s",
-							response.getCode(), response.getError());
-			} while ((url = response.getLocation()) != null);
-			return response.getResponse(clazz);
-
+			final String url = url(uri, query);
+			/*
+			 * Identical concurrent requests share one fetch and one parsed
+			 * result; the key includes who is asking and what is wanted.
+			 */
+			String key = key(url, http.authString) + " " + clazz.getName();
+			return clazz.cast(inFlight.execute(key, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return fetch(clazz, url);
+				}
+			}));
 		} catch (ComponentException e) {
 			throw e;
 		} catch (MalformedURLException e) {
 			throw new ComponentException("Problem constructing resource URL", e);
-		} catch (JAXBException e) {
+		} catch (JAXBException | XMLStreamException e) {
 			throw new ComponentException("Problem when unmarshalling response",
 					e);
 		} catch (Exception e) {
@@ -197,6 +231,105 @@ class Client {
 		}
 	}
 
+	/**
+	 * The actual GET, following redirects. Does not handle coalescing. Where
+	 * the URL is known to be permanently redirected, the redirect is skipped;
+	 * if the remembered target does not answer with the resource, the
+	 * redirect is forgotten and the URL fetched again the long way round.
+	 */
+	private <T> T fetch(Class<T> clazz, String url) throws Exception {
+		// The registry may redirect users differently, as it answers them
+		String redirectKey = key(url, http.authString);
+		String target = redirects.get(redirectKey);
+		if (target != null) {
+			redirectsSkipped.incrementAndGet();
+			try {
+				logger.info("GET of " + target);
+				ServerResponse response = http.GET(target, clazz, false);
+				if (!response.isFailure() && response.getLocation() == null)
+					return response.getResponse(clazz);
+				logger.info("redirect target " + target + " of " + url
+						+ " answered " + response.getCode()
+						+ "; forgetting redirect");
+			} catch (InterruptedIOException | ConnectionPoolTimeoutException e) {
+				// Our own problem, not the target's
+				throw e;
+			} catch (IOException e) {
+				logger.info("redirect target " + target + " of " + url
+						+ " failed (" + e.getMessage()
+						+ "); forgetting redirect");
+			}
+			redirects.remove(redirectKey);
+		}
+		return fetch(clazz, redirectKey, url);
+	}
+
+	/**
+	 * @param redirectKey
+	 *            What to remember a permanent redirect of the URL under.
+	 */
+	private <T> T fetch(Class<T> clazz, String redirectKey, String url)
+			throws Exception {
+		int redirectCounter = 0;
+		boolean permanent = true;
+		ServerResponse response;
+		do {
+			if (redirectCounter++ > REDIRECT_LIMIT)
+				throw new ComponentException("too many redirects!");
+			logger.info("GET of " + url);
+			// Follow redirects here, so that permanent ones can be noted
+			response = http.GET(url, clazz, false);
+			if (response.isFailure())
+				throw new ComponentException(
+						"Unable to perform request (%d): %s",
+						response.getCode(), response.getError());
+			if (response.getLocation() == null)
+				break;
+			redirectHops.incrementAndGet();
+			permanent &= response.isPermanentRedirect();
+			url = new URL(new URL(url), response.getLocation()).toString();
+		} while (true);
+		if (redirectCounter > 1 && permanent) {
+			logger.debug("remembering permanent redirect to " + url);
+			redirects.put(redirectKey, url);
+		}
+		return response.getResponse(clazz);
+	}
+
+	/**
+	 * @return How many redirects have been followed by GETs made by this
+	 *         client.
+	 */
+	long getRedirectHopCount() {
+		return redirectHops.get();
+	}
+
+	/**
+	 * @return How many GETs went straight to the target of a remembered
+	 *         permanent redirect.
+	 */
+	long getRedirectSkippedCount() {
+		return redirectsSkipped.get();
+	}
+
+	/** @return How many permanent redirects this client remembers. */
+	int getRedirectCacheSize() {
+		return redirects.size();
+	}
+
+	/** @return How many GETs have been asked of this client. */
+	long getRequestCount() {
+		return inFlight.getRequestCount();
+	}
+
+	/**
+	 * @return How many GETs were answered by sharing an identical request
+	 *         that was already in progress.
+	 */
+	long getCoalescedRequestCount() {
+		return inFlight.getCoalescedCount();
+	}
+
 	/**
 	 * Does an HTTP POST against the configured repository.
 	 * 
@@ -224,7 +357,7 @@ class Client {
 			getMarshaller().marshal(elem, sw);
 			if (logger.isDebugEnabled())
 				logger.info("About to post XML document:\n" + sw);
-			ServerResponse response = http.POST(url, sw);
+			ServerResponse response = http.POST(url, sw, clazz);
 			if (response.isFailure())
 				throw new ComponentException(
 						"Unable to perform request (%d): %s",
@@ -272,7 +405,7 @@ class Client {
 			getMarshaller().marshal(elem, sw);
 			if (logger.isDebugEnabled())
 				logger.info("About to put XML document:\n" + sw);
-			ServerResponse response = http.PUT(url, sw);
+			ServerResponse response = http.PUT(url, sw, clazz);
 			if (response.isFailure())
 				throw new ComponentException(
 						"Unable to perform request (%d): %s",
@@ -321,6 +454,120 @@ class Client {
 					response.getCode(), response.getError());
 	}
 
+	/**
+	 * Does an HTTP GET against the configured repository in the background.
+	 * The arguments are as for {@link #get(Class, String, String...) get}.
+	 * 
+	 * @return The future deserialized response object. Use
+	 *         {@link #await(Future)} to wait for it.
+	 */
+	public <T> Future<T> getAsync(final Class<T> clazz, final String uri,
+			final String... query) {
+		return executor.submit(new Callable<T>() {
+			@Override
+			public T call() throws ComponentException {
+				return get(clazz, uri, query);
+			}
+		});
+	}
+
+	/**
+	 * Does an HTTP POST against the configured repository in the background.
+	 * The arguments are as for
+	 * {@link #post(Class, JAXBElement, String, String...) post}.
+	 * 
+	 * @return The future deserialized response object. Use
+	 *         {@link #await(Future)} to wait for it.
+	 */
+	public <T> Future<T> postAsync(final Class<T> clazz,
+			final JAXBElement<?> elem, final String uri, final String... query) {
+		return executor.submit(new Callable<T>() {
+			@Override
+			public T call() throws ComponentException {
+				return post(clazz, elem, uri, query);
+			}
+		});
+	}
+
+	/**
+	 * Does an HTTP PUT against the configured repository in the background.
+	 * The arguments are as for
+	 * {@link #put(Class, JAXBElement, String, String...) put}.
+	 * 
+	 * @return The future deserialized response object. Use
+	 *         {@link #await(Future)} to wait for it.
+	 */
+	@Unused
+	public <T> Future<T> putAsync(final Class<T> clazz,
+			final JAXBElement<?> elem, final String uri, final String... query) {
+		return executor.submit(new Callable<T>() {
+			@Override
+			public T call() throws ComponentException {
+				return put(clazz, elem, uri, query);
+			}
+		});
+	}
+
+	/**
+	 * Does an HTTP DELETE against the configured repository in the
+	 * background. The arguments are as for {@link #delete(String, String...)
+	 * delete}.
+	 * 
+	 * @return The future completion of the deletion. Use
+	 *         {@link #await(Future)} to wait for it.
+	 */
+	public Future<Void> deleteAsync(final String uri, final String... query) {
+		return executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws ComponentException {
+				delete(uri, query);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Determine in the background if the API is present on the service URI.
+	 * 
+	 * @return The future result of {@link #verify()}.
+	 */
+	public Future<Boolean> verifyAsync() {
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return verify();
+			}
+		});
+	}
+
+	/**
+	 * Wait for the result of one of the background requests. Tasks running
+	 * on the client's executor must not wait for other requests, as that can
+	 * starve the executor of threads.
+	 * 
+	 * @param future
+	 *            What to wait for.
+	 * @return The result of the request.
+	 * @throws ComponentException
+	 *             If the request failed, or the wait was interrupted.
+	 */
+	static <T> T await(Future<T> future) throws ComponentException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ComponentException("interrupted waiting for registry", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ComponentException)
+				throw (ComponentException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new ComponentException("Problem when sending request", cause);
+		}
+	}
+
 	/**
 	 * Get the HTTP Basic Auth token for the given URL.
 	 * 
@@ -367,32 +614,86 @@ class Client {
 	}
 
 	/**
-	 * Read a DOM tree from a stream, possibly with logging.
+	 * Get a stream for reading a response body, possibly with logging.
 	 * 
 	 * @param inputStream
 	 *            The stream to read from.
-	 * @return The DOM document.
-	 * @throws SAXException
-	 *             If something goes wrong during tree building.
+	 * @return The stream to parse.
 	 * @throws IOException
 	 *             If the stream isn't properly readable.
-	 * @throws ParserConfigurationException
-	 *             Shouldn't happen.
 	 */
-	private Document getDocumentFromStream(InputStream inputStream)
-			throws SAXException, IOException, ParserConfigurationException {
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		try (InputStream is = new BufferedInputStream(inputStream)) {
-			if (!logger.isDebugEnabled())
-				return db.parse(is);
-
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	private InputStream getResponseStream(InputStream inputStream)
+			throws IOException {
+		if (!logger.isDebugEnabled())
+			return new BufferedInputStream(inputStream);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (InputStream is = inputStream) {
 			copy(is, baos);
-			String response = baos.toString("UTF-8");
-			logger.info("response message follows\n"
-					+ response.substring(0,
-							min(MESSAGE_TRIM_LENGTH, response.length())));
-			return db.parse(new ByteArrayInputStream(baos.toByteArray()));
+		}
+		String response = baos.toString("UTF-8");
+		logger.info("response message follows\n"
+				+ response.substring(0,
+						min(MESSAGE_TRIM_LENGTH, response.length())));
+		return new ByteArrayInputStream(baos.toByteArray());
+	}
+
+	/**
+	 * Deserialize a response directly from a stream, without building an
+	 * intermediate document tree.
+	 * 
+	 * @param inputStream
+	 *            The stream to read from.
+	 * @param clazz
+	 *            The JAXB-annotated class that the result is supposed to be
+	 *            instantiated into.
+	 * @return The deserialized response object.
+	 * @throws IOException
+	 *             If the stream isn't properly readable.
+	 * @throws XMLStreamException
+	 *             If the stream doesn't contain well-formed XML.
+	 * @throws JAXBException
+	 *             If the XML doesn't describe the expected class.
+	 */
+	private <T> T unmarshalFromStream(InputStream inputStream, Class<T> clazz)
+			throws IOException, XMLStreamException, JAXBException {
+		try (InputStream is = getResponseStream(inputStream)) {
+			XMLStreamReader reader = createXMLStreamReader(is);
+			try {
+				return getUnmarshaller().unmarshal(reader, clazz).getValue();
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Scan an error document from a stream for the "reason" field.
+	 * 
+	 * @param inputStream
+	 *            The stream to read from. May be <tt>null</tt>.
+	 * @return The text of the first <tt>reason</tt> element, or <tt>null</tt>
+	 *         if there is none.
+	 * @throws IOException
+	 *             If the stream isn't properly readable.
+	 * @throws XMLStreamException
+	 *             If the stream doesn't contain well-formed XML.
+	 */
+	private String getReasonFromStream(InputStream inputStream)
+			throws IOException, XMLStreamException {
+		if (inputStream == null)
+			return null;
+		try (InputStream is = getResponseStream(inputStream)) {
+			XMLStreamReader reader = createXMLStreamReader(is);
+			try {
+				while (reader.hasNext())
+					if (reader.next() == START_ELEMENT
+							&& reader.getLocalName().equals("reason"))
+						return reader.getElementText();
+				return null;
+			} finally {
+				reader.close();
+			}
 		}
 	}
 
@@ -403,7 +704,7 @@ class Client {
 	 */
 	class MyExperimentConnector {
 		// authentication settings (and the current user)
-		private String authString = null;
+		private volatile String authString = null;
 
 		private void tryLogIn(boolean mandatory) throws ComponentException {
 			// check if the stored credentials are valid
@@ -416,7 +717,7 @@ class Client {
 				else {
 					// set the system to the "logged in" state from INI file properties
 					authString = userPass;
-					response = GET(registryBase.toString() + WHOAMI);
+					response = GET(registryBase.toString() + WHOAMI, null);
 				}
 			} catch (Exception e) {
 				authString = null;
@@ -452,7 +753,9 @@ class Client {
 
 		/**
 		 * Create a connection to a resource on an HTTP server. Configures a
-		 * number of default things, including the connection credentials.
+		 * number of default things, including the connection credentials. The
+		 * connection comes from the client's {@link Transport}, and must be
+		 * handed back to it when finished with.
 		 * 
 		 * @param method
 		 *            The method to connect with.
@@ -466,14 +769,20 @@ class Client {
 		 */
 		private HttpURLConnection connect(String method, String strURL)
 				throws MalformedURLException, IOException {
-			HttpURLConnection conn = (HttpURLConnection) new URL(strURL)
-					.openConnection();
-			conn.setRequestMethod(method);
-			if (method.equals("POST") || method.equals("PUT"))
-				conn.setDoOutput(true);
-			conn.setRequestProperty("User-Agent", PLUGIN_USER_AGENT);
-			if (authString != null)
-				conn.setRequestProperty("Authorization", "Basic " + authString);
+			HttpURLConnection conn = transport.open(method, strURL);
+			try {
+				if (method.equals("POST") || method.equals("PUT"))
+					conn.setDoOutput(true);
+				conn.setRequestProperty("User-Agent", PLUGIN_USER_AGENT);
+				if (compression.compressResponses())
+					conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+				if (authString != null)
+					conn.setRequestProperty("Authorization", "Basic "
+							+ authString);
+			} catch (RuntimeException e) {
+				transport.discard(conn);
+				throw e;
+			}
 			return conn;
 		}
 
@@ -483,20 +792,161 @@ class Client {
 		}
 
 		/**
-		 * Generic method to execute GET requests to myExperiment server.
+		 * Generic method to execute GET requests to myExperiment server. If
+		 * the client has a response cache, the request is made conditional on
+		 * any previously cached copy of the resource.
 		 * 
 		 * @param url
 		 *            The URL on myExperiment to issue GET request to.
-		 * @return An object containing XML Document with server's response body
-		 *         and a response code. Response body XML document might be null
-		 *         if there was an error or the user wasn't authorised to
-		 *         perform a certain action. Response code will always be set.
+		 * @param expected
+		 *            The class to deserialize a successful response into, or
+		 *            <tt>null</tt> if the response body is not wanted.
+		 * @return An object containing the server's deserialized response body
+		 *         and a response code. Response body might be null if there
+		 *         was an error or the user wasn't authorised to perform a
+		 *         certain action. Response code will always be set.
 		 * @throws Exception
 		 */
-		public ServerResponse GET(String url) throws Exception {
+		public ServerResponse GET(String url, Class<?> expected)
+				throws Exception {
+			return GET(url, expected, true);
+		}
+
+		/**
+		 * As {@link #GET(String, Class)}, but optionally leaving redirects
+		 * for the caller to follow (so it can see which are permanent).
+		 * 
+		 * @param followRedirects
+		 *            Whether the connection should follow redirects itself.
+		 */
+		public ServerResponse GET(final String url, final Class<?> expected,
+				final boolean followRedirects) throws Exception {
 			if (!isLoggedIn())
 				logger.warn("not logged in");
-			return receiveServerResponse(connect("GET", url), url, true, false);
+			try {
+				return perform(true, url, new Callable<ServerResponse>() {
+					@Override
+					public ServerResponse call() throws Exception {
+						return attemptGET(url, expected, followRedirects);
+					}
+				});
+			} catch (IOException e) {
+				ServerResponse stale = getStale(url, expected);
+				if (stale == null || !(isTransient(e)
+						|| e instanceof ConnectionPoolTimeoutException))
+					throw e;
+				logger.warn("serving stale copy of " + url + ": "
+						+ e.getMessage());
+				return stale;
+			}
+		}
+
+		/**
+		 * A single attempt at a GET, made conditional on any cached copy.
+		 */
+		private ServerResponse attemptGET(String url, Class<?> expected,
+				boolean followRedirects) throws Exception {
+			HttpURLConnection conn = connect("GET", url);
+			conn.setInstanceFollowRedirects(followRedirects);
+			if (responseCache == null)
+				return receiveServerResponse(conn, url, true, false, expected);
+
+			String cacheKey = key(url, authString);
+			ConditionalGetCache.Entry cached = responseCache.get(cacheKey);
+			if (cached != null) {
+				if (cached.etag != null)
+					conn.setRequestProperty("If-None-Match", cached.etag);
+				if (cached.lastModified != null)
+					conn.setRequestProperty("If-Modified-Since",
+							cached.lastModified);
+			}
+			return receiveServerResponse(conn, url, true, false, expected,
+					cacheKey, cached);
+		}
+
+		/**
+		 * Get the last copy of a resource that was received, whether or not
+		 * it is still current.
+		 * 
+		 * @return The response, or <tt>null</tt> if there is no copy.
+		 */
+		private ServerResponse getStale(String url, Class<?> expected)
+				throws Exception {
+			if (responseCache == null)
+				return null;
+			ConditionalGetCache.Entry cached = responseCache.get(key(url,
+					authString));
+			if (cached == null)
+				return null;
+			if (expected == null)
+				return new ServerResponse(HTTP_OK, null, null);
+			return new ServerResponse(HTTP_OK, null, unmarshalFromStream(
+					new ByteArrayInputStream(cached.body), expected));
+		}
+
+		/**
+		 * Whether a failure might go away if the request were tried again:
+		 * network problems and server-side errors, but not (for example)
+		 * missing resources. Running out of our own connections is not the
+		 * server's fault, and is not counted either.
+		 */
+		private boolean isTransient(Exception e) {
+			if (e instanceof ConnectionPoolTimeoutException)
+				return false;
+			if (e instanceof HttpStatusException)
+				return ((HttpStatusException) e).isServerError();
+			return e instanceof IOException
+					&& !(e instanceof FileNotFoundException);
+		}
+
+		/**
+		 * Make a request, subject to the registry's circuit breaker, retrying
+		 * transient failures if the request is idempotent.
+		 * 
+		 * @param idempotent
+		 *            Whether the request may safely be repeated.
+		 * @param url
+		 *            What the request is to, for logging.
+		 * @param request
+		 *            How to make one attempt at the request.
+		 * @return The response to the request.
+		 */
+		private ServerResponse perform(boolean idempotent, String url,
+				Callable<ServerResponse> request) throws Exception {
+			for (int attempt = 1;; attempt++) {
+				breaker.checkAllowed();
+				try {
+					ServerResponse response = request.call();
+					breaker.recordSuccess();
+					return response;
+				} catch (ConnectionPoolTimeoutException e) {
+					// Never reached the server; nothing to learn about it
+					breaker.recordNotMade();
+					throw e;
+				} catch (Exception e) {
+					if (!isTransient(e)) {
+						// The server is alive, even if unhappy with us
+						breaker.recordSuccess();
+						throw e;
+					}
+					breaker.recordFailure();
+					if (!idempotent || !retryPolicy.shouldRetry(attempt))
+						throw e;
+					long delay = retryPolicy.getDelay(attempt);
+					logger.info("will retry " + url + " in " + delay
+							+ "ms after failure: " + e.getMessage());
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException(
+								"interrupted while waiting to retry " + url);
+					}
+				} catch (Error e) {
+					breaker.recordFailure();
+					throw e;
+				}
+			}
 		}
 
 		/**
@@ -510,10 +960,16 @@ class Client {
 		 *         perform a certain action. Response code will always be set.
 		 * @throws Exception
 		 */
-		public ServerResponse HEAD(String url) throws Exception {
+		public ServerResponse HEAD(final String url) throws Exception {
 			if (!isLoggedIn())
 				logger.warn("not logged in");
-			return receiveServerResponse(connect("HEAD", url), url, false, true);
+			return perform(true, url, new Callable<ServerResponse>() {
+				@Override
+				public ServerResponse call() throws Exception {
+					return receiveServerResponse(connect("HEAD", url), url,
+							false, true, null);
+				}
+			});
 		}
 
 		/**
@@ -523,20 +979,29 @@ class Client {
 		 *            The URL on myExperiment to POST to.
 		 * @param xmlDataBody
 		 *            Body of the XML data to be POSTed to strURL.
-		 * @return An object containing XML Document with server's response body
-		 *         and a response code. Response body XML document might be null
-		 *         if there was an error or the user wasn't authorised to
-		 *         perform a certain action. Response code will always be set.
+		 * @param expected
+		 *            The class to deserialize a successful response into, or
+		 *            <tt>null</tt> if the response body is not wanted.
+		 * @return An object containing the server's deserialized response body
+		 *         and a response code. Response body might be null if there
+		 *         was an error or the user wasn't authorised to perform a
+		 *         certain action. Response code will always be set.
 		 * @throws Exception
 		 */
-		public ServerResponse POST(String url, Object xmlDataBody)
-				throws Exception {
+		public ServerResponse POST(final String url, final Object xmlDataBody,
+				final Class<?> expected) throws Exception {
 			if (!isLoggedIn() && !elevate())
 				return null;
 
-			HttpURLConnection conn = connect("POST", url);
-			sendXmlBody(xmlDataBody, conn);
-			return receiveServerResponse(conn, url, false, false);
+			return perform(false, url, new Callable<ServerResponse>() {
+				@Override
+				public ServerResponse call() throws Exception {
+					HttpURLConnection conn = connect("POST", url);
+					sendXmlBody(xmlDataBody, conn);
+					return receiveServerResponse(conn, url, false, false,
+							expected);
+				}
+			});
 		}
 
 		/**
@@ -551,11 +1016,16 @@ class Client {
 		 *         perform a certain action. Response code will always be set.
 		 * @throws Exception
 		 */
-		public ServerResponse DELETE(String url) throws Exception {
+		public ServerResponse DELETE(final String url) throws Exception {
 			if (!isLoggedIn() && !elevate())
 				return null;
-			return receiveServerResponse(connect("DELETE", url), url, true,
-					false);
+			return perform(false, url, new Callable<ServerResponse>() {
+				@Override
+				public ServerResponse call() throws Exception {
+					return receiveServerResponse(connect("DELETE", url), url,
+							true, false, null);
+				}
+			});
 		}
 
 		/**
@@ -566,20 +1036,29 @@ class Client {
 		 *            The URL on myExperiment to direct PUT request to.
 		 * @param xmlDataBody
 		 *            Body of the XML data to be POSTed to strURL.
-		 * @return An object containing XML Document with server's response body
-		 *         and a response code. Response body XML document might be null
-		 *         if there was an error or the user wasn't authorised to
-		 *         perform a certain action. Response code will always be set.
+		 * @param expected
+		 *            The class to deserialize a successful response into, or
+		 *            <tt>null</tt> if the response body is not wanted.
+		 * @return An object containing the server's deserialized response body
+		 *         and a response code. Response body might be null if there
+		 *         was an error or the user wasn't authorised to perform a
+		 *         certain action. Response code will always be set.
 		 * @throws Exception
 		 */
-		public ServerResponse PUT(String url, Object xmlDataBody)
-				throws Exception {
+		public ServerResponse PUT(final String url, final Object xmlDataBody,
+				final Class<?> expected) throws Exception {
 			if (!isLoggedIn() && !elevate())
 				return null;
 
-			HttpURLConnection conn = connect("PUT", url);
-			sendXmlBody(xmlDataBody, conn);
-			return receiveServerResponse(conn, url, false, false);
+			return perform(false, url, new Callable<ServerResponse>() {
+				@Override
+				public ServerResponse call() throws Exception {
+					HttpURLConnection conn = connect("PUT", url);
+					sendXmlBody(xmlDataBody, conn);
+					return receiveServerResponse(conn, url, false, false,
+							expected);
+				}
+			});
 		}
 
 		/**
@@ -593,28 +1072,65 @@ class Client {
 		 *            Where to write it to.
 		 * @throws IOException
 		 *             If anything goes wrong. The <code>conn</code> will be
-		 *             disconnected in the case of a failure.
+		 *             discarded in the case of a failure.
 		 */
 		private void sendXmlBody(Object xmlDataBody, HttpURLConnection conn)
 				throws IOException {
 			try {
 				conn.setRequestProperty("Content-Type", "application/xml");
-				if (xmlDataBody instanceof InputStream)
-					copy((InputStream) xmlDataBody, conn.getOutputStream());
-				else
-					try (OutputStreamWriter out = new OutputStreamWriter(
-							conn.getOutputStream())) {
-						if (xmlDataBody instanceof Reader)
-							copy((Reader) xmlDataBody, out);
-						else
-							out.write(xmlDataBody.toString());
-					}
+				if (compression.compressRequests())
+					conn.setRequestProperty("Content-Encoding", "gzip");
+				try (OutputStream os = getRequestStream(conn)) {
+					if (xmlDataBody instanceof InputStream)
+						copy((InputStream) xmlDataBody, os);
+					else
+						try (OutputStreamWriter out = new OutputStreamWriter(
+								os)) {
+							if (xmlDataBody instanceof Reader)
+								copy((Reader) xmlDataBody, out);
+							else
+								out.write(xmlDataBody.toString());
+						}
+				}
 			} catch (IOException e) {
-				conn.disconnect();
+				transport.discard(conn);
 				throw e;
 			}
 		}
 
+		private OutputStream getRequestStream(HttpURLConnection conn)
+				throws IOException {
+			if (compression.compressRequests())
+				return new GZIPOutputStream(conn.getOutputStream());
+			return conn.getOutputStream();
+		}
+
+		/**
+		 * Undo any content encoding that the server applied to a response.
+		 * 
+		 * @param conn
+		 *            The connection that the response came on.
+		 * @param stream
+		 *            The (possibly compressed) stream to read the response
+		 *            from. May be <tt>null</tt>.
+		 * @return The stream of the decoded response body.
+		 */
+		private InputStream decode(HttpURLConnection conn, InputStream stream)
+				throws IOException {
+			String encoding = conn.getContentEncoding();
+			if (stream == null || encoding == null)
+				return stream;
+			switch (encoding.trim().toLowerCase()) {
+			case "gzip":
+			case "x-gzip":
+				return new GZIPInputStream(stream);
+			case "deflate":
+				return new InflaterInputStream(stream);
+			default:
+				return stream;
+			}
+		}
+
 		/**
 		 * A common method for retrieving myExperiment server's response for all
 		 * types of requests.
@@ -629,85 +1145,167 @@ class Client {
 		 *            Flag for identifying type of the request. True when the
 		 *            current connection executes GET request; false when it
 		 *            executes a POST request.
-		 * @return An object containing XML Document with server's response body
-		 *         and a response code. Response body XML document might be null
-		 *         if there was an error or the user wasn't authorised to
-		 *         perform a certain action. Response code will always be set.
+		 * @param expected
+		 *            The class to deserialize a successful response into, or
+		 *            <tt>null</tt> if the response body is not wanted.
+		 * @return An object containing the server's deserialized response body
+		 *         and a response code. Response body might be null if there
+		 *         was an error or the user wasn't authorised to perform a
+		 *         certain action. Response code will always be set.
 		 */
 		private ServerResponse receiveServerResponse(HttpURLConnection conn,
-				String url, boolean isGETrequest, boolean isHEADrequest)
-				throws Exception {
+				String url, boolean isGETrequest, boolean isHEADrequest,
+				Class<?> expected) throws Exception {
+			return receiveServerResponse(conn, url, isGETrequest,
+					isHEADrequest, expected, null, null);
+		}
+
+		/**
+		 * Retrieve the server's response, maintaining the response cache.
+		 * 
+		 * @param cacheKey
+		 *            The key to cache a successful response under, or
+		 *            <tt>null</tt> if the response is not to be cached.
+		 * @param cached
+		 *            The cached entry that the request was made conditional
+		 *            on, or <tt>null</tt> if it was unconditional.
+		 */
+		private ServerResponse receiveServerResponse(HttpURLConnection conn,
+				String url, boolean isGETrequest, boolean isHEADrequest,
+				Class<?> expected, String cacheKey,
+				ConditionalGetCache.Entry cached) throws Exception {
+			boolean reusable = false;
 			try {
-				switch (conn.getResponseCode()) {
-				case HTTP_OK:
-					/*
-					 * data retrieval was successful - parse the response XML
-					 * and return it along with response code
-					 */
-					if (isHEADrequest)
-						return new ServerResponse(conn.getResponseCode(), null,
-								null);
+				ServerResponse response = readServerResponse(conn, url,
+						isGETrequest, isHEADrequest, expected, cacheKey, cached);
+				reusable = true;
+				return response;
+			} finally {
+				if (reusable)
+					transport.release(conn);
+				else
+					transport.discard(conn);
+			}
+		}
+
+		private ServerResponse readServerResponse(HttpURLConnection conn,
+				String url, boolean isGETrequest, boolean isHEADrequest,
+				Class<?> expected, String cacheKey,
+				ConditionalGetCache.Entry cached) throws Exception {
+			switch (conn.getResponseCode()) {
+			case HTTP_OK:
+				/*
+				 * data retrieval was successful - parse the response XML
+				 * and return it along with response code
+				 */
+				if (isHEADrequest || expected == null)
+					return new ServerResponse(conn.getResponseCode(), null,
+							null);
+				if (cacheKey != null)
 					return new ServerResponse(conn.getResponseCode(), null,
-							getDocumentFromStream(conn.getInputStream()));
-				case HTTP_NO_CONTENT:
+							unmarshalFromStream(cacheBody(conn, cacheKey),
+									expected));
+				return new ServerResponse(conn.getResponseCode(), null,
+						unmarshalFromStream(
+								decode(conn, conn.getInputStream()), expected));
+			case HTTP_NOT_MODIFIED:
+				// our cached copy is still good; serve it
+				if (cached == null)
+					throw new IOException("unsolicited 304 response from "
+							+ url);
+				logger.debug("cached copy of " + url + " is still valid");
+				if (expected == null)
 					return new ServerResponse(HTTP_OK, null, null);
+				return new ServerResponse(HTTP_OK, null, unmarshalFromStream(
+						new ByteArrayInputStream(cached.body), expected));
+			case HTTP_NO_CONTENT:
+				return new ServerResponse(HTTP_OK, null, null);
 
-				case HTTP_CREATED:
-				case HTTP_MOVED_PERM:
-				case HTTP_MOVED_TEMP:
-				case HTTP_SEE_OTHER:
-				case HTTP_USE_PROXY:
-					return new ServerResponse(conn.getResponseCode(),
-							conn.getHeaderField("Location"), null);
-
-				case HTTP_BAD_REQUEST:
-				case HTTP_FORBIDDEN:
-					/*
-					 * this was a bad XML request - need full XML response to
-					 * retrieve the error message from it; Java throws
-					 * IOException if getInputStream() is used when non HTTP_OK
-					 * response code was received - hence can use
-					 * getErrorStream() straight away to fetch the error
-					 * document
-					 */
-					return new ServerResponse(conn.getResponseCode(), null,
-							getDocumentFromStream(conn.getErrorStream()));
+			case HTTP_CREATED:
+			case HTTP_MOVED_PERM:
+			case HTTP_MOVED_TEMP:
+			case HTTP_SEE_OTHER:
+			case HTTP_USE_PROXY:
+			case HTTP_TEMPORARY_REDIRECT:
+			case HTTP_PERMANENT_REDIRECT:
+				return new ServerResponse(conn.getResponseCode(),
+						conn.getHeaderField("Location"), null);
+
+			case HTTP_BAD_REQUEST:
+			case HTTP_FORBIDDEN:
+				/*
+				 * this was a bad XML request - need full XML response to
+				 * retrieve the error message from it; Java throws
+				 * IOException if getInputStream() is used when non HTTP_OK
+				 * response code was received - hence can use
+				 * getErrorStream() straight away to fetch the error
+				 * document
+				 */
+				return new ServerResponse(conn.getResponseCode(), null, null,
+						getReasonFromStream(decode(conn, conn.getErrorStream())));
 
-				case HTTP_UNAUTHORIZED:
-					// this content is not authorised for current user
-					logger.warn("non-authorised request to " + url + "\n"
-							+ IOUtils.toString(conn.getErrorStream()));
+			case HTTP_UNAUTHORIZED:
+				// this content is not authorised for current user
+				logger.warn("non-authorised request to " + url + "\n"
+						+ IOUtils.toString(decode(conn, conn.getErrorStream())));
+				return new ServerResponse(conn.getResponseCode(), null,
+						null);
+
+			case HTTP_NOT_FOUND:
+				if (isHEADrequest)
 					return new ServerResponse(conn.getResponseCode(), null,
 							null);
+				throw new FileNotFoundException("no such resource: " + url);
+			default:
+				// unexpected response code - raise an exception
+				throw new HttpStatusException(conn.getResponseCode(),
+						format("Received unexpected HTTP response code (%d) while %s %s",
+								conn.getResponseCode(),
+								(isGETrequest ? "fetching data at"
+										: "posting data to"), url));
+			}
+		}
 
-				case HTTP_NOT_FOUND:
-					if (isHEADrequest)
-						return new ServerResponse(conn.getResponseCode(), null,
-								null);
-					throw new FileNotFoundException("no such resource: " + url);
-				default:
-					// unexpected response code - raise an exception
-					throw new IOException(
-							format("Received unexpected HTTP response code (%d) while %s %s",
-									conn.getResponseCode(),
-									(isGETrequest ? "fetching data at"
-											: "posting data to"), url));
-				}
-			} finally {
-				conn.disconnect();
+		/**
+		 * Read the body of a successful response, remembering it in the
+		 * response cache if the server supplied validators for it.
+		 * 
+		 * @return A stream from which the body can be re-read.
+		 */
+		private InputStream cacheBody(HttpURLConnection conn, String cacheKey)
+				throws IOException {
+			String etag = conn.getHeaderField("ETag");
+			String lastModified = conn.getHeaderField("Last-Modified");
+			if (etag == null && lastModified == null) {
+				responseCache.remove(cacheKey);
+				return decode(conn, conn.getInputStream());
 			}
+			byte[] body;
+			try (InputStream is = decode(conn, conn.getInputStream())) {
+				body = IOUtils.toByteArray(is);
+			}
+			responseCache.put(cacheKey, new ConditionalGetCache.Entry(body,
+					etag, lastModified));
+			return new ByteArrayInputStream(body);
 		}
 
 		class ServerResponse {
 			private final int responseCode;
 			private final String responseLocation;
-			private final Document responseBody;
+			private final Object responseBody;
+			private final String errorReason;
+
+			ServerResponse(int responseCode, String responseLocation,
+					Object responseBody) {
+				this(responseCode, responseLocation, responseBody, null);
+			}
 
 			ServerResponse(int responseCode, String responseLocation,
-					Document responseBody) {
+					Object responseBody, String errorReason) {
 				this.responseCode = responseCode;
 				this.responseBody = responseBody;
 				this.responseLocation = responseLocation;
+				this.errorReason = errorReason;
 			}
 
 			public int getCode() {
@@ -722,24 +1320,29 @@ class Client {
 				return responseLocation;
 			}
 
+			/**
+			 * @return Whether the response says that the resource has moved
+			 *         for good, so future requests may go straight to the
+			 *         location.
+			 */
+			public boolean isPermanentRedirect() {
+				return responseLocation != null
+						&& (responseCode == HTTP_MOVED_PERM
+								|| responseCode == HTTP_PERMANENT_REDIRECT);
+			}
+
 			public <T> T getResponse(Class<T> clazz) throws JAXBException {
-				return getUnmarshaller().unmarshal(
-						responseBody.getDocumentElement(), clazz).getValue();
+				if (responseBody == null)
+					throw new JAXBException("no document in response");
+				return clazz.cast(responseBody);
 			}
 
 			/**
 			 * Returns contents of the "reason" field of the error message.
 			 */
 			public String getError() {
-				if (responseBody != null) {
-					Node reasonElement = responseBody.getDocumentElement()
-							.getElementsByTagName("reason").item(0);
-					if (reasonElement != null) {
-						String reason = reasonElement.getTextContent();
-						if (!reason.isEmpty())
-							return reason;
-					}
-				}
+				if (errorReason != null && !errorReason.isEmpty())
+					return errorReason;
 				return format("unknown reason (%d)", responseCode);
 			}
 		}
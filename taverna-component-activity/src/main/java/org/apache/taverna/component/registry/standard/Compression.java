@@ -0,0 +1,23 @@
+package org.apache.taverna.component.registry.standard;
+
+/**
+ * How a {@link Client} uses HTTP compression when talking to a registry.
+ * 
+ * @author Donal Fellows
+ */
+enum Compression {
+	/** Neither ask for compressed responses nor compress uploads. */
+	NONE,
+	/** Ask for gzip- or deflate-compressed responses. */
+	RESPONSES,
+	/** Ask for compressed responses, and gzip the documents uploaded. */
+	ALL;
+
+	boolean compressResponses() {
+		return this != NONE;
+	}
+
+	boolean compressRequests() {
+		return this == ALL;
+	}
+}
@@ -0,0 +1,83 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of response bodies together with their HTTP validators (the
+ * <tt>ETag</tt> and <tt>Last-Modified</tt> headers), so that repeat fetches of
+ * the same resource can be made conditional and a <tt>304 Not Modified</tt>
+ * answered from memory. Entries are normally only served once the registry has
+ * confirmed them; the exception is that the client falls back to a stale entry
+ * when the registry cannot be reached or is failing (see
+ * {@link Client.MyExperimentConnector#GET(String, Class, boolean)}). The cache
+ * is bounded by the total size of the bodies it holds, evicting the least
+ * recently used entries first.
+ * 
+ * @author Donal Fellows
+ */
+class ConditionalGetCache {
+	static class Entry {
+		final byte[] body;
+		final String etag;
+		final String lastModified;
+
+		Entry(byte[] body, String etag, String lastModified) {
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final long maxBytes;
+	private long currentBytes;
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f,
+			true);
+
+	/**
+	 * @param maxBytes
+	 *            The maximum total size of the response bodies to hold.
+	 */
+	ConditionalGetCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Make the key for a cache entry. Responses are only shared between
+	 * requests made with the same credentials, as the registry's answer
+	 * depends on who is asking.
+	 * 
+	 * @param url
+	 *            The URL that was fetched.
+	 * @param identity
+	 *            The credentials that the fetch was made with, or
+	 *            <tt>null</tt> if it was anonymous.
+	 */
+	static String key(String url, String identity) {
+		return (identity == null ? "" : identity) + " " + url;
+	}
+
+	synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(String key, Entry entry) {
+		remove(key);
+		if (entry.body.length > maxBytes)
+			return;
+		entries.put(key, entry);
+		currentBytes += entry.body.length;
+		Iterator<Entry> it = entries.values().iterator();
+		while (currentBytes > maxBytes && it.hasNext()) {
+			currentBytes -= it.next().body.length;
+			it.remove();
+		}
+	}
+
+	synchronized void remove(String key) {
+		Entry old = entries.remove(key);
+		if (old != null)
+			currentBytes -= old.body.length;
+	}
+}
@@ -0,0 +1,18 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.io.IOException;
+
+/**
+ * Indicates that no connection to a host became free in time, because this
+ * client already had as many as it may in use. The server was never
+ * contacted, so this says nothing about its health.
+ * 
+ * @author Donal Fellows
+ */
+class ConnectionPoolTimeoutException extends IOException {
+	private static final long serialVersionUID = -4273419096652213857L;
+
+	ConnectionPoolTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,32 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * The simplest transport: a fresh connection for each request, disconnected as
+ * soon as the response has been read. This is how the client always used to
+ * work, and remains available for servers that misbehave with keep-alive.
+ * 
+ * @author Donal Fellows
+ */
+class DirectTransport implements Transport {
+	@Override
+	public HttpURLConnection open(String method, String url) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url)
+				.openConnection();
+		conn.setRequestMethod(method);
+		return conn;
+	}
+
+	@Override
+	public void release(HttpURLConnection conn) {
+		conn.disconnect();
+	}
+
+	@Override
+	public void discard(HttpURLConnection conn) {
+		conn.disconnect();
+	}
+}
@@ -0,0 +1,29 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.io.IOException;
+
+/**
+ * Indicates that a server gave an HTTP response code that the client does not
+ * know how to handle.
+ * 
+ * @author Donal Fellows
+ */
+class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 2868335394718434218L;
+	private final int code;
+
+	HttpStatusException(int code, String message) {
+		super(message);
+		this.code = code;
+	}
+
+	/** @return The HTTP response code. */
+	int getCode() {
+		return code;
+	}
+
+	/** @return Whether the response code indicates a server-side failure. */
+	boolean isServerError() {
+		return code >= 500;
+	}
+}
@@ -183,18 +183,23 @@ class NewComponent extends Component {
 		@Override
 		protected synchronized WorkflowBundle internalGetImplementation()
 				throws ComponentException {
-			if (bundleRef == null || bundleRef.get() == null) {
-				String contentUri = getLocationUri();
-				try {
-					WorkflowBundle result = system.getBundleFromUri(contentUri
-							+ "?version=" + version);
-					bundleRef = new SoftReference<>(result);
-					return result;
-				} catch (Exception e) {
-					throw new ComponentException("Unable to open dataflow", e);
+			WorkflowBundle result = bundleRef == null ? null : bundleRef.get();
+			if (result == null) {
+				result = registry.loadStoredImplementation(getID());
+				if (result == null) {
+					String contentUri = getLocationUri();
+					try {
+						result = system.getBundleFromUri(contentUri
+								+ "?version=" + version);
+					} catch (Exception e) {
+						throw new ComponentException("Unable to open dataflow",
+								e);
+					}
+					registry.storeImplementation(getID(), result);
 				}
+				bundleRef = new SoftReference<>(result);
 			}
-			return bundleRef.get();
+			return result;
 		}
 
 		@Override
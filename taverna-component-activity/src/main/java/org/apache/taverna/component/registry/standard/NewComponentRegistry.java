@@ -1,16 +1,28 @@
 package org.apache.taverna.component.registry.standard;
 
+import static java.util.Collections.nCopies;
 import static org.apache.taverna.component.registry.standard.Policy.PRIVATE;
 import static org.apache.taverna.component.utils.SystemUtils.getElementString;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -42,6 +54,7 @@ import org.apache.taverna.component.registry.api.ObjectFactory;
 import org.apache.taverna.component.registry.api.Permissions;
 import org.apache.taverna.component.registry.api.PolicyList;
 import org.apache.taverna.component.utils.AnnotationUtils;
+import org.apache.taverna.component.utils.DiskCache;
 import org.apache.taverna.component.utils.SystemUtils;
 import org.slf4j.Logger;
 
@@ -92,21 +105,44 @@ class NewComponentRegistry extends ComponentRegistry {
 	private final CredentialManager cm;
 	private final ComponentUtil util;
 	private final SystemUtils system;
+	private final Transport transport;
+	private final ConditionalGetCache responseCache;
+	private final Compression compression;
+	private final ExecutorService executor;
+	private final int fetchParallelism;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker breaker;
+	private final DiskCache implementationStore;
 	final AnnotationUtils annUtils;
 
 	protected NewComponentRegistry(CredentialManager cm, URL registryBase,
-			ComponentUtil util, SystemUtils system, AnnotationUtils annUtils) throws ComponentException {
+			ComponentUtil util, SystemUtils system, AnnotationUtils annUtils,
+			Transport transport, ConditionalGetCache responseCache,
+			Compression compression, ExecutorService executor,
+			int fetchParallelism, RetryPolicy retryPolicy,
+			CircuitBreaker breaker, DiskCache implementationStore)
+			throws ComponentException {
 		super(registryBase);
 		this.cm = cm;
 		this.util = util;
 		this.system = system;
 		this.annUtils = annUtils;
+		this.transport = transport;
+		this.responseCache = responseCache;
+		this.compression = compression;
+		this.executor = executor;
+		this.fetchParallelism = Math.max(1, fetchParallelism);
+		this.retryPolicy = retryPolicy;
+		this.breaker = breaker;
+		this.implementationStore = implementationStore;
 	}
 
-	private void checkClientCreated() throws ComponentException {
+	private synchronized void checkClientCreated() throws ComponentException {
 		try {
 			if (client == null)
-				client = new Client(jaxbContext, super.getRegistryBase(), cm);
+				client = new Client(jaxbContext, super.getRegistryBase(), cm,
+						transport, responseCache, compression, executor,
+						retryPolicy, breaker);
 		} catch (Exception e) {
 			throw new ComponentException("Unable to access registry", e);
 		}
@@ -149,15 +185,177 @@ class NewComponentRegistry extends ComponentRegistry {
 				"elements=" + elements);
 	}
 
+	private static String storeKey(ID id) {
+		return id.getRegistryBase() + "\n" + id.getFamilyName() + "\n"
+				+ id.getComponentName() + "\n" + id.getComponentVersion();
+	}
+
+	/**
+	 * Get a component implementation saved on disk by an earlier call to
+	 * {@link #storeImplementation(ID, WorkflowBundle) storeImplementation}.
+	 * Published versions of components never change, so a saved copy needs no
+	 * checking with the registry.
+	 * 
+	 * @return The implementation, or <tt>null</tt> if none was saved (or it
+	 *         could not be read).
+	 */
+	WorkflowBundle loadStoredImplementation(ID id) {
+		if (implementationStore == null)
+			return null;
+		byte[] data = implementationStore.get(storeKey(id));
+		if (data == null)
+			return null;
+		try {
+			return system.deserializeBundle(data);
+		} catch (ComponentException e) {
+			logger.warn("discarding unreadable saved implementation of " + id,
+					e);
+			implementationStore.remove(storeKey(id));
+			return null;
+		}
+	}
+
+	/**
+	 * Save a component implementation on disk, so that it need not be
+	 * fetched again even after a restart. Failure to save is logged, but is
+	 * otherwise harmless.
+	 */
+	void storeImplementation(ID id, WorkflowBundle implementation) {
+		if (implementationStore == null)
+			return;
+		try {
+			implementationStore.put(storeKey(id),
+					system.serializeBundle(implementation));
+		} catch (ComponentException | IOException e) {
+			logger.warn("failed to save implementation of " + id, e);
+		}
+	}
+
+	/**
+	 * Run a batch of independent registry requests in the background, with at
+	 * most {@link #fetchParallelism} of them in flight at once. Each time one
+	 * finishes, the next is started, so a slow request holds up no more than
+	 * its own slot.
+	 * 
+	 * @param tasks
+	 *            The requests to make.
+	 * @param failures
+	 *            Where to put how each request that failed went wrong, by
+	 *            its position in the tasks.
+	 * @return The results of the requests, in the same order as the tasks,
+	 *         with <tt>null</tt> for those that failed.
+	 * @throws ComponentException
+	 *             If interrupted while waiting for the requests; those not
+	 *             yet finished are cancelled.
+	 */
+	<T> List<T> fanOut(List<? extends Callable<T>> tasks,
+			Map<Integer, ComponentException> failures)
+			throws ComponentException {
+		CompletionService<T> service = new ExecutorCompletionService<>(
+				executor);
+		Map<Future<T>, Integer> running = new HashMap<>();
+		List<T> results = new ArrayList<>(nCopies(tasks.size(), (T) null));
+		int submitted = 0;
+		try {
+			while (submitted < tasks.size() || !running.isEmpty()) {
+				while (submitted < tasks.size()
+						&& running.size() < fetchParallelism) {
+					running.put(service.submit(tasks.get(submitted)),
+							submitted);
+					submitted++;
+				}
+				Future<T> done = service.take();
+				int index = running.remove(done);
+				try {
+					results.set(index, Client.await(done));
+				} catch (ComponentException e) {
+					failures.put(index, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<T> f : running.keySet())
+				f.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ComponentException("interrupted talking to registry", e);
+		}
+		return results;
+	}
+
 	@Override
-	protected void populateFamilyCache() throws ComponentException {
+	protected boolean populateFamilyCache(Map<String, Family> families)
+			throws ComponentException {
+		checkClientCreated();
+		List<Callable<List<Description>>> tasks = new ArrayList<>();
+		final List<NewComponentProfile> profiles = new ArrayList<>();
 		for (Profile pr : getComponentProfiles()) {
-			NewComponentProfile p = (NewComponentProfile) pr;
-			for (Description cfd : listComponentFamilies(p
-					.getResourceLocation()))
-				familyCache.put(getElementString(cfd, "title"),
-						new NewComponentFamily(this, p, cfd, util));
+			final NewComponentProfile p = (NewComponentProfile) pr;
+			profiles.add(p);
+			tasks.add(new Callable<List<Description>>() {
+				@Override
+				public List<Description> call() throws ComponentException {
+					return listComponentFamilies(p.getResourceLocation());
+				}
+			});
 		}
+
+		Map<Integer, ComponentException> failures = new TreeMap<>();
+		List<List<Description>> results = fanOut(tasks, failures);
+		for (Map.Entry<Integer, ComponentException> failure : failures
+				.entrySet()) {
+			NewComponentProfile p = profiles.get(failure.getKey());
+			logger.warn("failed to list component families for profile "
+					+ p.getName() + " (" + p.getResourceLocation() + ")",
+					failure.getValue());
+		}
+		if (!profiles.isEmpty() && failures.size() == profiles.size())
+			throw new ComponentException(
+					"failed to list component families for any profile",
+					failures.values().iterator().next());
+
+		/*
+		 * Merge in profile order, exactly as if the lists had been fetched
+		 * one after another, so the result does not depend on timing.
+		 */
+		for (int i = 0; i < profiles.size(); i++)
+			if (results.get(i) != null)
+				for (Description cfd : results.get(i))
+					families.put(getElementString(cfd, "title"),
+							new NewComponentFamily(this, profiles.get(i), cfd,
+									util));
+		return failures.isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The versions are fetched concurrently, so the time taken is governed by
+	 * the slowest fetch rather than by the total of them all.
+	 */
+	@Override
+	public Map<ID, Version> getComponentVersions(Collection<? extends ID> ids,
+			Map<ID, ComponentException> failures) throws ComponentException {
+		// Know the families before going parallel, so they're only listed once
+		getComponentFamilies();
+		final List<ID> order = new ArrayList<>(ids);
+		List<Callable<Version>> tasks = new ArrayList<>();
+		for (final ID id : order)
+			tasks.add(new Callable<Version>() {
+				@Override
+				public Version call() throws ComponentException {
+					return loadComponentVersion(id);
+				}
+			});
+
+		Map<Integer, ComponentException> failed = new TreeMap<>();
+		List<Version> results = fanOut(tasks, failed);
+		for (Map.Entry<Integer, ComponentException> failure : failed
+				.entrySet())
+			failures.put(order.get(failure.getKey()), failure.getValue());
+		Map<ID, Version> versions = new LinkedHashMap<>();
+		for (int i = 0; i < order.size(); i++)
+			if (results.get(i) != null)
+				versions.put(order.get(i), results.get(i));
+		return versions;
 	}
 
 	@Override
@@ -186,14 +384,15 @@ class NewComponentRegistry extends ComponentRegistry {
 	}
 
 	@Override
-	protected void populateProfileCache() throws ComponentException {
+	protected void populateProfileCache(List<Profile> profiles)
+			throws ComponentException {
 		checkClientCreated();
 
 		for (Description cpd : client.get(ComponentProfileList.class,
 				COMPONENT_PROFILE_LIST,
 				"elements=" + NewComponentProfile.ELEMENTS).getFile())
 			if (cpd.getUri() != null && !cpd.getUri().isEmpty())
-				profileCache.add(new NewComponentProfile(this, cpd, util
+				profiles.add(new NewComponentProfile(this, cpd, util
 						.getBaseProfileLocator()));
 	}
 
@@ -249,8 +448,10 @@ class NewComponentRegistry extends ComponentRegistry {
 		profile.getContent().setValue(content.getBytes(utf8));
 		if (license == null)
 			license = getPreferredLicense();
-		profile.setLicenseType(new Description());
-		profile.getLicenseType().getContent().add(license.getAbbreviation());
+		if (license != null) {
+			profile.setLicenseType(new Description());
+			profile.getLicenseType().getContent().add(license.getAbbreviation());
+		}
 		profile.setPermissions(getPermissions(sharingPolicy));
 
 		return profile;
@@ -267,8 +468,10 @@ class NewComponentRegistry extends ComponentRegistry {
 		familyDoc.setTitle(familyName);
 		if (license == null)
 			license = getPreferredLicense();
-		familyDoc.setLicenseType(new Description());
-		familyDoc.getLicenseType().getContent().add(license.getAbbreviation());
+		if (license != null) {
+			familyDoc.setLicenseType(new Description());
+			familyDoc.getLicenseType().getContent().add(license.getAbbreviation());
+		}
 		familyDoc.setPermissions(getPermissions(sharingPolicy));
 
 		return familyDoc;
@@ -309,16 +512,13 @@ class NewComponentRegistry extends ComponentRegistry {
 	}
 
 	@Override
-	protected void populatePermissionCache() {
-		permissionCache.add(Policy.PUBLIC);
-		permissionCache.add(Policy.PRIVATE);
-		try {
-			if (DO_LIST_POLICIES)
-				for (Description d : listPolicies())
-					permissionCache.add(new Policy.Group(d.getId()));
-		} catch (ComponentException e) {
-			logger.warn("failed to fetch sharing policies", e);
-		}
+	protected void populatePermissionCache(List<SharingPolicy> permissions)
+			throws ComponentException {
+		permissions.add(Policy.PUBLIC);
+		permissions.add(Policy.PRIVATE);
+		if (DO_LIST_POLICIES)
+			for (Description d : listPolicies())
+				permissions.add(new Policy.Group(d.getId()));
 	}
 
 	private List<LicenseType> listLicenses() throws ComponentException {
@@ -329,13 +529,10 @@ class NewComponentRegistry extends ComponentRegistry {
 	}
 
 	@Override
-	protected void populateLicenseCache() {
-		try {
-			for (LicenseType lt : listLicenses())
-				licenseCache.add(new NewComponentLicense(this, lt));
-		} catch (ComponentException e) {
-			logger.warn("failed to fetch licenses", e);
-		}
+	protected void populateLicenseCache(List<License> licenses)
+			throws ComponentException {
+		for (LicenseType lt : listLicenses())
+			licenses.add(new NewComponentLicense(this, lt));
 	}
 
 	@Override
@@ -438,10 +635,7 @@ class NewComponentRegistry extends ComponentRegistry {
 	}
 
 	public License getLicense(String name) throws ComponentException {
-		for (License l : getLicenses())
-			if (l.getAbbreviation().equals(name))
-				return l;
-		return null;
+		return getLicenseByAbbreviation(name);
 	}
 
 	@Override
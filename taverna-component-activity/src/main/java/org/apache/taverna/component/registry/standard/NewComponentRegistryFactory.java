@@ -1,11 +1,20 @@
 package org.apache.taverna.component.registry.standard;
 
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
 import static org.apache.taverna.component.registry.standard.NewComponentRegistry.logger;
 
+import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.taverna.t2.security.credentialmanager.CredentialManager;
 
@@ -13,15 +22,62 @@ import org.apache.taverna.component.api.ComponentException;
 import org.apache.taverna.component.registry.ComponentRegistry;
 import org.apache.taverna.component.registry.ComponentUtil;
 import org.apache.taverna.component.utils.AnnotationUtils;
+import org.apache.taverna.component.utils.DiskCache;
+import org.apache.taverna.component.utils.SingleFlight;
 import org.apache.taverna.component.utils.SystemUtils;
 import org.springframework.beans.factory.annotation.Required;
 
 public class NewComponentRegistryFactory {
+	private static final String IMPLEMENTATION_STORE = "component-implementations";
+	/** How many registries may be refreshing their metadata at once. */
+	private static final int REFRESH_THREADS = 2;
 	private final Map<String, NewComponentRegistry> componentRegistries = new HashMap<>();
 	private CredentialManager cm;
 	private ComponentUtil util;
 	private SystemUtils system;
 	private AnnotationUtils annUtils;
+	private Transport transport;
+	private boolean pooledConnections = true;
+	private int maxConnectionsPerHost = 5;
+	private int connectTimeout = 30000;
+	private int readTimeout = 120000;
+	private long idleTimeout = 300000;
+	private long responseCacheSize = 8 * 1024 * 1024;
+	private Compression defaultCompression = Compression.RESPONSES;
+	private final Map<String, Compression> compression = new HashMap<>();
+	private ExecutorService executor;
+	private int requestThreads = 8;
+	private int fetchParallelism = 4;
+	private int maxRetries = 2;
+	private long retryBaseDelay = 200;
+	private long retryMaxDelay = 5000;
+	private int circuitBreakerThreshold = 5;
+	private long circuitBreakerOpenTime = 30000;
+	private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+	private long implementationStoreSize = 256 * 1024 * 1024;
+	private DiskCache implementationStore;
+	private long metadataTimeToLive = 15 * 60 * 1000;
+	private boolean backgroundMetadataRefresh = false;
+	/**
+	 * Refreshes wait on requests run by {@link #executor}, so they must not
+	 * run there themselves.
+	 */
+	private ExecutorService metadataRefresher;
+	private long verificationTimeToLive = 10 * 60 * 1000;
+	private long failedVerificationTimeToLive = 30000;
+	private final ConcurrentMap<String, Verification> verifications = new ConcurrentHashMap<>();
+	private final SingleFlight<String, Boolean> verifying = new SingleFlight<>();
+
+	/** The outcome of checking a registry base, and until when to trust it. */
+	private static class Verification {
+		final boolean verified;
+		final long expiry;
+
+		Verification(boolean verified, long expiry) {
+			this.verified = verified;
+			this.expiry = expiry;
+		}
+	}
 
 	@Required
 	public void setCredentialManager(CredentialManager cm) {
@@ -43,20 +99,337 @@ public class NewComponentRegistryFactory {
 		this.annUtils = annUtils;
 	}
 
+	/**
+	 * @param pooled
+	 *            Whether to keep connections to registries alive between
+	 *            requests. If false, each request uses a fresh connection.
+	 */
+	public void setPooledConnections(boolean pooled) {
+		this.pooledConnections = pooled;
+	}
+
+	/**
+	 * @param maxConnections
+	 *            How many connections may be open to one registry host at
+	 *            once. Only used when connections are pooled.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnections) {
+		this.maxConnectionsPerHost = maxConnections;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            Connection timeout in milliseconds; zero for no timeout.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @param readTimeout
+	 *            Read timeout in milliseconds; zero for no timeout.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @param idleTimeout
+	 *            How long (in milliseconds) a registry host may be idle
+	 *            before the pool forgets about it.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @param size
+	 *            The maximum number of bytes of response bodies that each
+	 *            registry client will keep for revalidation with conditional
+	 *            GETs; zero to disable the cache.
+	 */
+	public void setResponseCacheSize(long size) {
+		this.responseCacheSize = size;
+	}
+
+	/**
+	 * @param mode
+	 *            How to use HTTP compression with registries that are not
+	 *            otherwise configured: one of <tt>none</tt>,
+	 *            <tt>responses</tt> (the default) or <tt>all</tt>, the last of
+	 *            which also gzips uploads.
+	 */
+	public void setDefaultCompression(String mode) {
+		this.defaultCompression = Compression.valueOf(mode.toUpperCase());
+	}
+
+	/**
+	 * @param modes
+	 *            Per-registry compression modes, mapping from the registry
+	 *            base URL to the mode (as for
+	 *            {@link #setDefaultCompression(String)}).
+	 */
+	public void setCompression(Map<String, String> modes) {
+		compression.clear();
+		for (Map.Entry<String, String> entry : modes.entrySet())
+			compression.put(trimSlash(entry.getKey()),
+					Compression.valueOf(entry.getValue().toUpperCase()));
+	}
+
+	/**
+	 * @param threads
+	 *            How many registry requests may be running in the background
+	 *            at once, across all registries.
+	 */
+	public void setRequestThreads(int threads) {
+		this.requestThreads = threads;
+	}
+
+	/**
+	 * @param parallelism
+	 *            How many independent requests (such as the family lists of
+	 *            each profile) a registry may have in flight at once.
+	 */
+	public void setFetchParallelism(int parallelism) {
+		this.fetchParallelism = parallelism;
+	}
+
+	/**
+	 * @param retries
+	 *            How many times to retry a read from a registry that failed
+	 *            because of a network problem or a server error; zero to never
+	 *            retry. Updates are never retried.
+	 */
+	public void setMaxRetries(int retries) {
+		this.maxRetries = retries;
+	}
+
+	/**
+	 * @param delay
+	 *            How long (in milliseconds) to wait before the first retry.
+	 *            Each later retry waits about twice as long as the one before.
+	 */
+	public void setRetryBaseDelay(long delay) {
+		this.retryBaseDelay = delay;
+	}
+
+	/**
+	 * @param delay
+	 *            The longest time (in milliseconds) to wait between retries.
+	 */
+	public void setRetryMaxDelay(long delay) {
+		this.retryMaxDelay = delay;
+	}
+
+	/**
+	 * @param threshold
+	 *            How many consecutive failed requests to a registry make the
+	 *            client stop contacting it for a while; zero to always keep
+	 *            trying.
+	 */
+	public void setCircuitBreakerThreshold(int threshold) {
+		this.circuitBreakerThreshold = threshold;
+	}
+
+	/**
+	 * @param openTime
+	 *            How long (in milliseconds) to stop contacting a failing
+	 *            registry before trying it again.
+	 */
+	public void setCircuitBreakerOpenTime(long openTime) {
+		this.circuitBreakerOpenTime = openTime;
+	}
+
+	/**
+	 * @param size
+	 *            The maximum number of bytes of component implementations to
+	 *            keep on disk between runs; zero to not keep them.
+	 */
+	public void setImplementationStoreSize(long size) {
+		this.implementationStoreSize = size;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) to use the lists of families,
+	 *            profiles and licenses fetched from a registry before fetching
+	 *            them again; negative to never fetch them again.
+	 */
+	public void setMetadataTimeToLive(long timeToLive) {
+		this.metadataTimeToLive = timeToLive;
+	}
+
+	/**
+	 * @param background
+	 *            Whether to fetch expired lists of families, profiles and
+	 *            licenses in the background, using the old lists meanwhile,
+	 *            instead of making the first user of them wait.
+	 */
+	public void setBackgroundMetadataRefresh(boolean background) {
+		this.backgroundMetadataRefresh = background;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) to trust that a registry found to
+	 *            be present still is, before checking again.
+	 */
+	public void setVerificationTimeToLive(long timeToLive) {
+		this.verificationTimeToLive = timeToLive;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            How long (in milliseconds) to take a registry that could not
+	 *            be reached as absent, before trying it again.
+	 */
+	public void setFailedVerificationTimeToLive(long timeToLive) {
+		this.failedVerificationTimeToLive = timeToLive;
+	}
+
+	private synchronized DiskCache getImplementationStore() {
+		if (implementationStore == null && implementationStoreSize > 0)
+			implementationStore = new DiskCache(new File(
+					system.getApplicationHomeDir(), IMPLEMENTATION_STORE),
+					implementationStoreSize);
+		return implementationStore;
+	}
+
+	private RetryPolicy getRetryPolicy() {
+		return new RetryPolicy(maxRetries, retryBaseDelay, retryMaxDelay);
+	}
+
+	private synchronized CircuitBreaker getCircuitBreaker(URL registryBase) {
+		String key = trimSlash(registryBase.toExternalForm());
+		CircuitBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			breaker = new CircuitBreaker(key, circuitBreakerThreshold,
+					circuitBreakerOpenTime);
+			breakers.put(key, breaker);
+		}
+		return breaker;
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null)
+			executor = newFixedThreadPool(requestThreads, new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "component-registry-request-"
+							+ counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		return executor;
+	}
+
+	private synchronized ExecutorService getMetadataRefresher() {
+		if (metadataRefresher == null)
+			metadataRefresher = newFixedThreadPool(REFRESH_THREADS,
+					new ThreadFactory() {
+						private final AtomicInteger counter = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r,
+									"component-registry-refresh-"
+											+ counter.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		return metadataRefresher;
+	}
+
+	private static String trimSlash(String url) {
+		if (url.endsWith("/"))
+			return url.substring(0, url.length() - 1);
+		return url;
+	}
+
+	private Compression getCompression(URL registryBase) {
+		Compression c = compression.get(trimSlash(registryBase
+				.toExternalForm()));
+		return c == null ? defaultCompression : c;
+	}
+
+	private synchronized Transport getTransport() {
+		if (transport == null) {
+			if (pooledConnections)
+				transport = new PooledTransport(maxConnectionsPerHost,
+						connectTimeout, readTimeout, idleTimeout);
+			else
+				transport = new DirectTransport();
+		}
+		return transport;
+	}
+
+	private ConditionalGetCache makeResponseCache() {
+		if (responseCacheSize <= 0)
+			return null;
+		return new ConditionalGetCache(responseCacheSize);
+	}
+
 	public synchronized ComponentRegistry getComponentRegistry(URL registryBase)
 			throws ComponentException {
 		if (!componentRegistries.containsKey(registryBase.toExternalForm())) {
 			logger.debug("constructing registry instance for " + registryBase);
-			componentRegistries.put(registryBase.toExternalForm(),
-					new NewComponentRegistry(cm, registryBase, util, system,
-							annUtils));
+			NewComponentRegistry registry = new NewComponentRegistry(cm,
+					registryBase, util, system, annUtils, getTransport(),
+					makeResponseCache(), getCompression(registryBase),
+					getExecutor(), fetchParallelism, getRetryPolicy(),
+					getCircuitBreaker(registryBase), getImplementationStore());
+			registry.setMetadataTimeToLive(metadataTimeToLive);
+			if (backgroundMetadataRefresh)
+				registry.setMetadataRefresher(getMetadataRefresher());
+			componentRegistries.put(registryBase.toExternalForm(), registry);
 		}
 		return componentRegistries.get(registryBase.toExternalForm());
 	}
 
-	public boolean verifyBase(URL registryBase) {
+	/**
+	 * Check whether there is a registry at a base URL. The answer is
+	 * remembered for a while (a shorter while if there is no registry there),
+	 * and concurrent checks of one base URL are made only once.
+	 */
+	public boolean verifyBase(final URL registryBase) {
+		final String key = trimSlash(registryBase.toExternalForm());
+		Verification v = verifications.get(key);
+		if (v != null && v.expiry >= currentTimeMillis())
+			return v.verified;
+		try {
+			return verifying.execute(key, new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					boolean verified = checkBase(registryBase);
+					long ttl = verified ? verificationTimeToLive
+							: failedVerificationTimeToLive;
+					verifications.put(key, new Verification(verified,
+							currentTimeMillis() + ttl));
+					return verified;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (Exception e) {
+			logger.info("failed to verify " + registryBase, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Actually check whether there is a registry at a base URL.
+	 */
+	protected boolean checkBase(URL registryBase) {
 		try {
-			return new Client(jaxbContext, registryBase, false, cm).verify();
+			return new Client(jaxbContext, registryBase, false, cm,
+					getTransport(), null, getCompression(registryBase),
+					getExecutor(), getRetryPolicy(),
+					getCircuitBreaker(registryBase)).verify();
 		} catch (Exception e) {
 			logger.info("failed to construct connection client to "
 					+ registryBase, e);
@@ -0,0 +1,227 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+
+/**
+ * A transport that keeps connections to the registry alive between requests.
+ * Rather than disconnecting each connection, the response body is drained and
+ * closed so that the JVM's HTTP keep-alive cache can hand the socket to the
+ * next request for the same host; the lifetime of idle sockets in that cache is
+ * governed by the server's <tt>Keep-Alive</tt> header and the
+ * <tt>http.maxConnections</tt> system property. This class bounds how many
+ * connections may be in use to any one host at once, and applies connect and
+ * read timeouts.
+ * 
+ * @author Donal Fellows
+ */
+class PooledTransport implements Transport {
+	private static final Logger logger = getLogger(PooledTransport.class);
+	private static final int DRAIN_BUFFER_SIZE = 4096;
+
+	private final int maxConnectionsPerHost;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final long idleTimeout;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private final Map<HttpURLConnection, Host> leased = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            How many connections may be simultaneously in use to a
+	 *            single host.
+	 * @param connectTimeout
+	 *            How long to wait (in milliseconds) to connect, or for a
+	 *            connection to the host to become available. Zero means wait
+	 *            forever.
+	 * @param readTimeout
+	 *            How long to wait (in milliseconds) for data from the server.
+	 *            Zero means wait forever.
+	 * @param idleTimeout
+	 *            How long (in milliseconds) a host may go without any
+	 *            requests before the bookkeeping for it is forgotten.
+	 */
+	PooledTransport(int maxConnectionsPerHost, int connectTimeout,
+			int readTimeout, long idleTimeout) {
+		if (maxConnectionsPerHost < 1)
+			throw new IllegalArgumentException(
+					"must allow at least one connection per host");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	private static class Host {
+		final Semaphore permits;
+		volatile long lastUsed;
+		/**
+		 * Set once this host has been forgotten; a permit acquired from it
+		 * after that must be handed back and one taken from its successor.
+		 */
+		volatile boolean retired;
+
+		Host(int size) {
+			permits = new Semaphore(size, true);
+		}
+	}
+
+	private static String hostKey(URL url) {
+		int port = url.getPort();
+		if (port < 0)
+			port = url.getDefaultPort();
+		return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":"
+				+ port;
+	}
+
+	private Host getHost(String key) {
+		Host host = hosts.get(key);
+		if (host == null)
+			synchronized (hosts) {
+				host = hosts.get(key);
+				if (host == null) {
+					evictIdleHosts();
+					host = new Host(maxConnectionsPerHost);
+					hosts.put(key, host);
+				}
+			}
+		return host;
+	}
+
+	/**
+	 * Must be called with the lock on {@link #hosts} held. A host is only
+	 * retired while this holds all its permits, so no connection can be in use
+	 * through it at the time; anyone who gets a permit from it afterwards sees
+	 * that it is retired.
+	 */
+	private void evictIdleHosts() {
+		long limit = System.currentTimeMillis() - idleTimeout;
+		Iterator<Host> it = hosts.values().iterator();
+		while (it.hasNext()) {
+			Host h = it.next();
+			if (h.lastUsed < limit
+					&& h.permits.tryAcquire(maxConnectionsPerHost)) {
+				it.remove();
+				h.retired = true;
+				h.permits.release(maxConnectionsPerHost);
+			}
+		}
+	}
+
+	/** @return How many hosts this transport is keeping track of. */
+	int getHostCount() {
+		return hosts.size();
+	}
+
+	@Override
+	public HttpURLConnection open(String method, String url)
+			throws IOException {
+		URL u = new URL(url);
+		String key = hostKey(u);
+		Host host;
+		while (true) {
+			host = getHost(key);
+			acquire(host, u);
+			if (!host.retired)
+				break;
+			host.permits.release();
+		}
+		host.lastUsed = System.currentTimeMillis();
+
+		HttpURLConnection conn;
+		try {
+			conn = (HttpURLConnection) u.openConnection();
+			conn.setRequestMethod(method);
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+		} catch (IOException | RuntimeException e) {
+			host.permits.release();
+			throw e;
+		}
+		leased.put(conn, host);
+		return conn;
+	}
+
+	private void acquire(Host host, URL u) throws IOException {
+		try {
+			if (connectTimeout > 0) {
+				if (!host.permits.tryAcquire(connectTimeout, MILLISECONDS))
+					throw new ConnectionPoolTimeoutException(
+							"timed out waiting for a connection to "
+									+ u.getHost());
+			} else
+				host.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"interrupted waiting for a connection to " + u.getHost());
+		}
+	}
+
+	@Override
+	public void release(HttpURLConnection conn) {
+		try {
+			drain(conn);
+		} finally {
+			giveBack(conn);
+		}
+	}
+
+	@Override
+	public void discard(HttpURLConnection conn) {
+		try {
+			conn.disconnect();
+		} finally {
+			giveBack(conn);
+		}
+	}
+
+	private void giveBack(HttpURLConnection conn) {
+		Host host = leased.remove(conn);
+		if (host != null) {
+			host.lastUsed = System.currentTimeMillis();
+			host.permits.release();
+		}
+	}
+
+	/**
+	 * Read whatever is left of the response so that the socket can be reused.
+	 * Failures are harmless: the JVM will not cache a socket that is not
+	 * cleanly positioned at the end of a response.
+	 */
+	private void drain(HttpURLConnection conn) {
+		InputStream in;
+		try {
+			in = conn.getInputStream();
+		} catch (IOException e) {
+			in = conn.getErrorStream();
+		}
+		if (in == null)
+			return;
+		try {
+			byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+			while (in.read(buffer) >= 0)
+				continue;
+		} catch (IOException e) {
+			logger.debug("did not drain connection", e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Ignore; already finished with it
+			}
+		}
+	}
+}
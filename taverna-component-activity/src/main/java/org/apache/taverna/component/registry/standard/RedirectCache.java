@@ -0,0 +1,56 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of where permanent redirects (<tt>301 Moved Permanently</tt> and
+ * <tt>308 Permanent Redirect</tt>) lead, so that later requests for the same
+ * URL can go straight to the final target. As the registry may redirect
+ * different users differently, redirects are remembered by
+ * {@linkplain ConditionalGetCache#key(String, String) URL and credentials}.
+ * The cache holds a bounded number of redirects, evicting the least recently
+ * used first.
+ * 
+ * @author Donal Fellows
+ */
+class RedirectCache {
+	private final Map<String, String> targets;
+
+	/**
+	 * @param maxEntries
+	 *            The maximum number of redirected URLs to remember.
+	 */
+	RedirectCache(final int maxEntries) {
+		targets = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2916426917335180567L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 *            The URL and who is asking for it.
+	 * @return Where the URL is known to redirect to, or <tt>null</tt> if it
+	 *         is not known to be permanently redirected.
+	 */
+	synchronized String get(String key) {
+		return targets.get(key);
+	}
+
+	synchronized void put(String key, String target) {
+		targets.put(key, target);
+	}
+
+	synchronized void remove(String key) {
+		targets.remove(key);
+	}
+
+	synchronized int size() {
+		return targets.size();
+	}
+}
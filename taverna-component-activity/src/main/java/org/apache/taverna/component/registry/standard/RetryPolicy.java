@@ -0,0 +1,58 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.lang.Math.min;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often, and how patiently, the {@link Client} retries idempotent requests
+ * that failed for reasons that might go away: network failures, timeouts and
+ * server-side (5xx) errors. The delay between attempts grows exponentially,
+ * with random jitter so that many clients do not retry in lock-step.
+ * 
+ * @author Donal Fellows
+ */
+class RetryPolicy {
+	/** Never retry. */
+	static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+	private final int maxRetries;
+	private final long baseDelay;
+	private final long maxDelay;
+
+	/**
+	 * @param maxRetries
+	 *            How many times to retry after the first attempt.
+	 * @param baseDelay
+	 *            The delay (in milliseconds) before the first retry.
+	 * @param maxDelay
+	 *            The longest delay (in milliseconds) between attempts.
+	 */
+	RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+		this.maxRetries = maxRetries;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * @param attempt
+	 *            How many attempts have failed so far.
+	 * @return Whether to try again.
+	 */
+	boolean shouldRetry(int attempt) {
+		return attempt <= maxRetries;
+	}
+
+	/**
+	 * @param attempt
+	 *            How many attempts have failed so far (at least 1).
+	 * @return How long (in milliseconds) to wait before the next attempt.
+	 */
+	long getDelay(int attempt) {
+		long delay = baseDelay << min(attempt - 1, 30);
+		if (delay <= 0 || delay > maxDelay)
+			delay = maxDelay;
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+}
@@ -0,0 +1,44 @@
+package org.apache.taverna.component.registry.standard;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * How the {@link Client} obtains its HTTP connections. Every connection
+ * obtained through {@link #open(String, String) open} must be handed back
+ * through exactly one of {@link #release(HttpURLConnection) release} or
+ * {@link #discard(HttpURLConnection) discard}.
+ * 
+ * @author Donal Fellows
+ */
+interface Transport {
+	/**
+	 * Create a connection to a resource on an HTTP server.
+	 * 
+	 * @param method
+	 *            The HTTP method that will be used.
+	 * @param url
+	 *            The URL of the resource to connect to.
+	 * @return The (unconnected) connection.
+	 * @throws IOException
+	 *             If the connection cannot be made.
+	 */
+	HttpURLConnection open(String method, String url) throws IOException;
+
+	/**
+	 * Say that the caller has finished with the response to a connection.
+	 * The transport may keep the underlying socket for later use.
+	 * 
+	 * @param conn
+	 *            The connection that is finished with.
+	 */
+	void release(HttpURLConnection conn);
+
+	/**
+	 * Say that a connection is in an unknown state and must not be reused.
+	 * 
+	 * @param conn
+	 *            The connection to throw away.
+	 */
+	void discard(HttpURLConnection conn);
+}
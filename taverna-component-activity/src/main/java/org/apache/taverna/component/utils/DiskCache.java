@@ -0,0 +1,256 @@
+package org.apache.taverna.component.utils;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+
+/**
+ * A cache of byte arrays in files, surviving restarts of the JVM. Each entry
+ * is written to a temporary file and then renamed into place, so a reader
+ * never sees a partly written entry, and each carries a checksum so that a
+ * damaged entry is detected and discarded rather than used. The total size of
+ * the entries is capped, and the least recently used are deleted to keep
+ * within it. Temporary files left behind by a write that never finished
+ * (because the JVM died during it) are deleted once they are old enough that
+ * no write can still be using them.
+ * 
+ * @author Donal Fellows
+ */
+public class DiskCache {
+	private static final Logger logger = getLogger(DiskCache.class);
+	private static final int MAGIC = 0x54434331; // "TCC1"
+	private static final String SUFFIX = ".entry";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long STALE_TEMP_AGE = 60 * 60 * 1000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final FileFilter ENTRIES = new FileFilter() {
+		@Override
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().endsWith(SUFFIX);
+		}
+	};
+	private static final FileFilter TEMPORARIES = new FileFilter() {
+		@Override
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().endsWith(TEMP_SUFFIX);
+		}
+	};
+
+	private final File directory;
+	private final long maxBytes;
+	private long currentBytes = -1;
+
+	/**
+	 * @param directory
+	 *            Where to keep the entries. Created if necessary.
+	 * @param maxBytes
+	 *            The maximum total size of the entry files.
+	 */
+	public DiskCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	private File file(String key) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(
+					key.getBytes(UTF8)))
+				sb.append(String.format("%02x", b));
+			return new File(directory, sb.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-1 is always available", e);
+		}
+	}
+
+	private static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	/**
+	 * Read an entry.
+	 * 
+	 * @return The cached data, or <tt>null</tt> if there is no intact entry
+	 *         for the key.
+	 */
+	public byte[] get(String key) {
+		File f = file(key);
+		if (!f.isFile())
+			return null;
+		try {
+			return read(key, f);
+		} catch (IOException | RuntimeException e) {
+			/*
+			 * What we read may have been replaced while we read it, so look
+			 * again with writers kept out before deciding it is damaged.
+			 */
+			return recheck(key, f);
+		}
+	}
+
+	private synchronized byte[] recheck(String key, File f) {
+		if (!f.isFile())
+			return null;
+		try {
+			return read(key, f);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("discarding damaged cache entry " + f + ": " + e);
+			remove(key);
+			return null;
+		}
+	}
+
+	private static byte[] read(String key, File f) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f)))) {
+			if (in.readInt() != MAGIC || !key.equals(in.readUTF()))
+				throw new IOException("not an entry for " + key);
+			long sum = in.readLong();
+			// The checksum does not cover the length, so check it is sane
+			int length = in.readInt();
+			if (length < 0 || length > f.length())
+				throw new IOException("bad entry length " + length);
+			byte[] data = new byte[length];
+			in.readFully(data);
+			if (checksum(data) != sum)
+				throw new IOException("checksum mismatch");
+			// Record the use, for eviction
+			f.setLastModified(System.currentTimeMillis());
+			return data;
+		}
+	}
+
+	/**
+	 * Write an entry, replacing any existing one for the key, then delete the
+	 * least recently used entries if the cache has grown too large.
+	 * 
+	 * @throws IOException
+	 *             If the entry cannot be written. Any previous entry for the
+	 *             key is left as it was.
+	 */
+	public synchronized void put(String key, byte[] data) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("cannot create " + directory);
+		initSize();
+		File f = file(key);
+		long oldSize = f.length();
+		File tmp = File.createTempFile("entry", TEMP_SUFFIX, directory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeUTF(key);
+				out.writeLong(checksum(data));
+				out.writeInt(data.length);
+				out.write(data);
+			}
+			try {
+				Files.move(tmp.toPath(), f.toPath(), ATOMIC_MOVE,
+						REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), f.toPath(), REPLACE_EXISTING);
+			}
+		} finally {
+			tmp.delete();
+		}
+		currentBytes += f.length() - oldSize;
+		if (currentBytes > maxBytes)
+			evict();
+	}
+
+	/** Delete an entry, if present. */
+	public synchronized void remove(String key) {
+		File f = file(key);
+		long size = f.length();
+		if (f.delete() && currentBytes >= 0)
+			currentBytes -= size;
+	}
+
+	/** Must hold the lock. */
+	private void initSize() {
+		if (currentBytes >= 0)
+			return;
+		currentBytes = 0;
+		File[] files = directory.listFiles(ENTRIES);
+		if (files != null)
+			for (File f : files)
+				currentBytes += f.length();
+		sweepTemporaries();
+	}
+
+	/**
+	 * Delete the temporary files of writes that did not finish. Those of
+	 * writes that may still be going on, perhaps in another JVM sharing the
+	 * directory, are left alone. Must hold the lock.
+	 */
+	private void sweepTemporaries() {
+		File[] files = directory.listFiles(TEMPORARIES);
+		if (files == null)
+			return;
+		long cutoff = System.currentTimeMillis() - STALE_TEMP_AGE;
+		for (File f : files)
+			if (f.lastModified() < cutoff && f.delete())
+				logger.info("deleted abandoned cache file " + f);
+	}
+
+	/** Must hold the lock. */
+	private void evict() {
+		sweepTemporaries();
+		File[] files = directory.listFiles(ENTRIES);
+		if (files == null)
+			return;
+		/*
+		 * Snapshot the times of last use first; readers may update them while
+		 * we sort.
+		 */
+		final Map<File, Long> lastUsed = new HashMap<>();
+		currentBytes = 0;
+		for (File f : files) {
+			lastUsed.put(f, f.lastModified());
+			currentBytes += f.length();
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(lastUsed.get(a), lastUsed.get(b));
+			}
+		});
+		for (int i = 0; i < files.length && currentBytes > maxBytes; i++) {
+			long size = files[i].length();
+			if (files[i].delete()) {
+				currentBytes -= size;
+				logger.debug("evicted cache entry " + files[i]);
+			}
+		}
+	}
+
+	/** @return The total size of the entries. */
+	public synchronized long getSize() {
+		initSize();
+		return currentBytes;
+	}
+}
@@ -0,0 +1,108 @@
+package org.apache.taverna.component.utils;
+
+import static javax.xml.stream.XMLInputFactory.IS_NAMESPACE_AWARE;
+import static javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES;
+import static javax.xml.stream.XMLInputFactory.SUPPORT_DTD;
+
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reusable XML (de)serialization engines. Creating a marshaller or
+ * unmarshaller is surprisingly expensive, and neither is thread-safe, so each
+ * thread keeps its own for each JAXB context it uses. Callers must not change
+ * the properties, listeners or schema of the engines they are handed, as they
+ * will be seen by the next user on that thread.
+ * 
+ * @author Donal Fellows
+ */
+public class JAXBUtils {
+	private JAXBUtils() {
+	}
+
+	private static final ThreadLocal<Map<JAXBContext, Marshaller>> marshallers = new ThreadLocal<Map<JAXBContext, Marshaller>>() {
+		@Override
+		protected Map<JAXBContext, Marshaller> initialValue() {
+			return new IdentityHashMap<>();
+		}
+	};
+	private static final ThreadLocal<Map<JAXBContext, Unmarshaller>> unmarshallers = new ThreadLocal<Map<JAXBContext, Unmarshaller>>() {
+		@Override
+		protected Map<JAXBContext, Unmarshaller> initialValue() {
+			return new IdentityHashMap<>();
+		}
+	};
+	private static final XMLInputFactory xmlInputFactory;
+	static {
+		xmlInputFactory = XMLInputFactory.newInstance();
+		// Registry documents are namespace-free; be lenient with them
+		xmlInputFactory.setProperty(IS_NAMESPACE_AWARE, false);
+		xmlInputFactory.setProperty(SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * Get this thread's marshaller for a context.
+	 * 
+	 * @param context
+	 *            The JAXB context to marshal with.
+	 * @return The marshaller. Must not be passed to another thread.
+	 * @throws JAXBException
+	 *             If the marshaller can't be created.
+	 */
+	public static Marshaller getMarshaller(JAXBContext context)
+			throws JAXBException {
+		Map<JAXBContext, Marshaller> map = marshallers.get();
+		Marshaller m = map.get(context);
+		if (m == null) {
+			m = context.createMarshaller();
+			map.put(context, m);
+		}
+		return m;
+	}
+
+	/**
+	 * Get this thread's unmarshaller for a context.
+	 * 
+	 * @param context
+	 *            The JAXB context to unmarshal with.
+	 * @return The unmarshaller. Must not be passed to another thread.
+	 * @throws JAXBException
+	 *             If the unmarshaller can't be created.
+	 */
+	public static Unmarshaller getUnmarshaller(JAXBContext context)
+			throws JAXBException {
+		Map<JAXBContext, Unmarshaller> map = unmarshallers.get();
+		Unmarshaller u = map.get(context);
+		if (u == null) {
+			u = context.createUnmarshaller();
+			map.put(context, u);
+		}
+		return u;
+	}
+
+	/**
+	 * Make a pull parser over a stream, using a shared parser factory. The
+	 * parser is not namespace-aware and will not resolve DTDs or external
+	 * entities.
+	 * 
+	 * @param stream
+	 *            The stream to parse.
+	 * @return The parser, which the caller must close.
+	 * @throws XMLStreamException
+	 *             If the parser can't be created.
+	 */
+	public static XMLStreamReader createXMLStreamReader(InputStream stream)
+			throws XMLStreamException {
+		return xmlInputFactory.createXMLStreamReader(stream);
+	}
+}
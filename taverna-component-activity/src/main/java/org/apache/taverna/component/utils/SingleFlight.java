@@ -0,0 +1,166 @@
+package org.apache.taverna.component.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent identical operations. While an operation for a key is
+ * running, any other caller asking for the same key waits for it and receives
+ * the same result (or failure) rather than running the operation again. Once
+ * the operation finishes, nothing is remembered; this is not a cache.
+ * 
+ * @author Donal Fellows
+ * @param <K>
+ *            The type of keys identifying operations.
+ * @param <V>
+ *            The type of results of operations.
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Run an operation, unless an identical one is already running, in which
+	 * case wait for that instead.
+	 * 
+	 * @param key
+	 *            What identifies the operation.
+	 * @param operation
+	 *            How to perform the operation. Runs in the calling thread.
+	 * @return The result of the operation.
+	 * @throws Exception
+	 *             Whatever the operation threw.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for another caller's operation.
+	 */
+	public V execute(K key, Callable<V> operation) throws Exception {
+		requests.incrementAndGet();
+		FutureTask<V> task = new FutureTask<>(operation);
+		FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+		if (existing != null) {
+			coalesced.incrementAndGet();
+			return getResult(existing);
+		}
+		try {
+			task.run();
+		} finally {
+			inFlight.remove(key, task);
+		}
+		return getResult(task);
+	}
+
+	/**
+	 * An operation on several keys at once.
+	 */
+	public interface Batch<K, V> {
+		/**
+		 * @param keys
+		 *            The keys to run the operation for.
+		 * @param failures
+		 *            Where to put how the operation failed for any key that
+		 *            it could not produce a result for.
+		 * @return The results of the operation, by key.
+		 */
+		Map<K, V> call(Set<K> keys, Map<K, Exception> failures)
+				throws Exception;
+	}
+
+	/**
+	 * Run one operation for several keys, except those for which an
+	 * operation is already running. Anyone asking for one of the keys while
+	 * the batch runs waits for it, and gets its result (or failure) for that
+	 * key, just as if a single operation had been run for it.
+	 * 
+	 * @param keys
+	 *            What identifies the operations to be done.
+	 * @param operation
+	 *            How to perform the operations. Runs in the calling thread.
+	 * @return The results of the keys that the operation was run for and
+	 *         produced results for. Keys that were already being worked on
+	 *         elsewhere are left out, and are not waited for.
+	 * @throws Exception
+	 *             Whatever the operation as a whole threw.
+	 */
+	public Map<K, V> executeAll(Collection<? extends K> keys,
+			Batch<K, V> operation) throws Exception {
+		final Map<K, V> results = new HashMap<>();
+		final Map<K, Exception> failures = new HashMap<>();
+		Map<K, FutureTask<V>> claimed = new LinkedHashMap<>();
+		for (final K key : keys) {
+			if (claimed.containsKey(key))
+				continue;
+			requests.incrementAndGet();
+			// Runs once the batch is over, to hand its outcome to waiters
+			FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+				@Override
+				public V call() throws Exception {
+					Exception failure = failures.get(key);
+					if (failure != null)
+						throw failure;
+					V result = results.get(key);
+					if (result == null)
+						throw new IllegalStateException("no result for " + key);
+					return result;
+				}
+			});
+			if (inFlight.putIfAbsent(key, task) == null)
+				claimed.put(key, task);
+			else
+				coalesced.incrementAndGet();
+		}
+		if (claimed.isEmpty())
+			return results;
+
+		try {
+			results.putAll(operation.call(claimed.keySet(), failures));
+		} catch (Exception e) {
+			for (K key : claimed.keySet())
+				if (!results.containsKey(key) && !failures.containsKey(key))
+					failures.put(key, e);
+			throw e;
+		} finally {
+			for (Map.Entry<K, FutureTask<V>> entry : claimed.entrySet()) {
+				entry.getValue().run();
+				inFlight.remove(entry.getKey(), entry.getValue());
+			}
+		}
+		results.keySet().retainAll(claimed.keySet());
+		return results;
+	}
+
+	private V getResult(FutureTask<V> task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/** @return How many operations have been asked for. */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return How many operations were satisfied by waiting for an identical
+	 *         one that was already running.
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+}
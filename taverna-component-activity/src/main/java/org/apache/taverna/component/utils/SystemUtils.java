@@ -1,5 +1,6 @@
 package org.apache.taverna.component.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.URL;
@@ -36,6 +37,17 @@ public class SystemUtils {
 		}
 	}
 
+	public WorkflowBundle deserializeBundle(byte[] data)
+			throws ComponentException {
+		try {
+			return workflowBundleIO.readBundle(new ByteArrayInputStream(data),
+					SCUFL2_TYPE);
+		} catch (Exception e) {
+			throw new ComponentException(
+					"failed to deserialize component implementation", e);
+		}
+	}
+
 	private String determineMediaTypeForFilename(File file) {
 		String[] pieces = file.getName().split("\\.");
 		switch (pieces[pieces.length - 1]) {
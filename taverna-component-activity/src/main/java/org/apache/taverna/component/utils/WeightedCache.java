@@ -0,0 +1,213 @@
+package org.apache.taverna.component.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache bounded by the total <i>weight</i> of its values rather than by
+ * their number, evicting the least recently used entries first. Each entry
+ * also has its own time to live; an expired entry is no longer served as
+ * current, but is kept (until evicted) so that it can be used as a fallback.
+ * <p>
+ * Reads do not lock. Writes are serialized with each other, and eviction
+ * scans the entries for the one least recently read, so this suits caches of
+ * a few thousand entries that are read far more often than written.
+ * 
+ * @author Donal Fellows
+ * @param <K>
+ *            The type of keys.
+ * @param <V>
+ *            The type of values.
+ */
+public class WeightedCache<K, V> {
+	/**
+	 * Estimates how much room a value takes up in a cache.
+	 */
+	public interface Weigher<V> {
+		/**
+		 * @return The weight of the value; at least 1.
+		 */
+		long weigh(V value);
+	}
+
+	/**
+	 * A value in the cache, with its expiry time.
+	 */
+	public static class Entry<V> {
+		final V value;
+		final long weight;
+		final long expiry;
+		volatile long lastAccess;
+
+		Entry(V value, long weight, long expiry, long lastAccess) {
+			this.value = value;
+			this.weight = weight;
+			this.expiry = expiry;
+			this.lastAccess = lastAccess;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		/** @return When the value stops being current. */
+		public long getExpiry() {
+			return expiry;
+		}
+
+		public boolean isExpired() {
+			return expiry < currentTimeMillis();
+		}
+	}
+
+	private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+	private final long maxWeight;
+	private final Weigher<? super V> weigher;
+	/** Orders accesses; cheaper and finer than the system clock. */
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile long weight;
+
+	/**
+	 * @param maxWeight
+	 *            The maximum total weight of the values held.
+	 * @param weigher
+	 *            How to weigh values.
+	 */
+	public WeightedCache(long maxWeight, Weigher<? super V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Get a current value from the cache.
+	 * 
+	 * @return The value, or <tt>null</tt> if there is no value for the key or
+	 *         if it has expired.
+	 */
+	public V get(K key) {
+		Entry<V> entry = getEntry(key);
+		if (entry == null || entry.isExpired())
+			return null;
+		return entry.value;
+	}
+
+	/**
+	 * Get an entry from the cache, whether or not it has expired. Counts as a
+	 * hit only if the entry is current.
+	 * 
+	 * @return The entry, or <tt>null</tt> if there is none for the key.
+	 */
+	public Entry<V> getEntry(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null || entry.isExpired()) {
+			misses.incrementAndGet();
+			return entry;
+		}
+		entry.lastAccess = clock.incrementAndGet();
+		hits.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Get a current value from the cache without counting it as a use: it
+	 * affects neither the statistics nor what is evicted.
+	 * 
+	 * @return The value, or <tt>null</tt> if there is no value for the key or
+	 *         if it has expired.
+	 */
+	public V peek(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null || entry.isExpired())
+			return null;
+		return entry.value;
+	}
+
+	/**
+	 * Get a value from the cache whether or not it has expired. Does not count
+	 * towards the statistics.
+	 * 
+	 * @return The value, or <tt>null</tt> if there is no value for the key.
+	 */
+	public V getStale(K key) {
+		Entry<V> entry = entries.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * Put a value in the cache, evicting others if necessary to make room. A
+	 * value that is too heavy to ever fit is not stored.
+	 * 
+	 * @param timeToLive
+	 *            How long (in milliseconds) the value will be current for.
+	 */
+	public synchronized void put(K key, V value, long timeToLive) {
+		remove(key);
+		long w = Math.max(1, weigher.weigh(value));
+		if (w > maxWeight)
+			return;
+		entries.put(key, new Entry<>(value, w, currentTimeMillis() + timeToLive,
+				clock.incrementAndGet()));
+		weight += w;
+		while (weight > maxWeight && evictOneExcept(key))
+			evictions.incrementAndGet();
+	}
+
+	/** Must hold the lock. */
+	private boolean evictOneExcept(K keep) {
+		K victim = null;
+		long oldest = Long.MAX_VALUE;
+		for (Map.Entry<K, Entry<V>> entry : entries.entrySet())
+			if (entry.getValue().lastAccess < oldest
+					&& !entry.getKey().equals(keep)) {
+				oldest = entry.getValue().lastAccess;
+				victim = entry.getKey();
+			}
+		if (victim == null)
+			return false;
+		remove(victim);
+		return true;
+	}
+
+	public synchronized void remove(K key) {
+		Entry<V> old = entries.remove(key);
+		if (old != null)
+			weight -= old.weight;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/** @return How many entries are in the cache, current or not. */
+	public int size() {
+		return entries.size();
+	}
+
+	/** @return The total weight of the values in the cache. */
+	public long getWeight() {
+		return weight;
+	}
+
+	/** @return How many lookups found a current value. */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/** @return How many lookups found no value, or only an expired one. */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return How many entries have been evicted to make room. */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
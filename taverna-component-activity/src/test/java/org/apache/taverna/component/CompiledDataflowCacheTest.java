@@ -0,0 +1,122 @@
+package org.apache.taverna.component;
+
+import static org.apache.taverna.component.TestSupport.fakeDataflow;
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.apache.taverna.component.registry.ComponentVersion;
+import org.apache.taverna.component.registry.ComponentVersionIdentification;
+import org.apache.taverna.component.utils.SystemUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+
+public class CompiledDataflowCacheTest {
+	private static final int ACTIVITIES = 30;
+	/** Stands in for the memory held by one compiled dataflow. */
+	private static final int DATAFLOW_SIZE = 1024 * 1024;
+	/** Stands in for the time taken by one compilation. */
+	private static final long COMPILE_TIME = 20;
+
+	private CompiledDataflowCache cache;
+	private SystemUtils system;
+	private Version.ID id;
+
+	@Before
+	public void setUp() throws Exception {
+		id = new ComponentVersionIdentification(new URL(
+				"http://example.com/registry"), "family", "component", 1);
+		system = new SystemUtils() {
+			@Override
+			public Dataflow compile(WorkflowBundle implementation) {
+				try {
+					Thread.sleep(COMPILE_TIME);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return fakeDataflow(DATAFLOW_SIZE);
+			}
+		};
+		cache = new CompiledDataflowCache();
+		cache.setSystemUtil(system);
+		cache.setComponentUtil(new ComponentUtil() {
+			@Override
+			public Version getVersion(Version.ID ident) {
+				return new ComponentVersion(null) {
+					@Override
+					protected Integer internalGetVersionNumber() {
+						return 1;
+					}
+
+					@Override
+					protected String internalGetDescription() {
+						return "";
+					}
+
+					@Override
+					protected WorkflowBundle internalGetImplementation() {
+						return new WorkflowBundle();
+					}
+
+					@Override
+					public URL getHelpURL() {
+						return null;
+					}
+				};
+			}
+		});
+	}
+
+	@Test
+	public void testSharedUntilReleased() throws Exception {
+		Dataflow first = cache.acquire(id);
+		assertSame(first, cache.acquire(id));
+		assertEquals(1, cache.getCompilationCount());
+		cache.release(id);
+		assertSame(first, cache.acquire(id));
+		cache.release(id);
+		cache.release(id);
+		assertEquals(0, cache.size());
+		assertNotSame(first, cache.acquire(id));
+		assertEquals(2, cache.getCompilationCount());
+	}
+
+	@Test
+	public void testConcurrentRealizationCompilesOnce() throws Exception {
+		List<Dataflow> results = runTogether(ACTIVITIES,
+				new Callable<Dataflow>() {
+					@Override
+					public Dataflow call() throws Exception {
+						return cache.acquire(id);
+					}
+				});
+		for (Dataflow dataflow : results)
+			assertSame(results.get(0), dataflow);
+		assertEquals(1, cache.getCompilationCount());
+	}
+
+	@Test
+	public void testDroppedWhenActivitiesDiscarded() throws Exception {
+		// Acquired but, as when an activity is thrown away, never released
+		cache.acquire(id);
+		assertEquals(1, cache.size());
+		for (int i = 0; i < 100 && cache.size() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, cache.size());
+		cache.acquire(id);
+		assertEquals(2, cache.getCompilationCount());
+	}
+}
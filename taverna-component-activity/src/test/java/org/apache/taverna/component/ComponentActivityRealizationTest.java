@@ -0,0 +1,237 @@
+package org.apache.taverna.component;
+
+import static org.apache.taverna.component.TestSupport.fakeDataflow;
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.COMPONENT_NAME;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.COMPONENT_VERSION;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.FAMILY_NAME;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.REGISTRY_BASE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.taverna.t2.activities.dataflow.DataflowActivity;
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Family;
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.registry.ComponentImplementationCache;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+import uk.org.taverna.scufl2.api.core.Workflow;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Checks that many invocation threads of one activity share its realization
+ * without queuing behind each other once it exists.
+ */
+public class ComponentActivityRealizationTest {
+	private static final int THREADS = 16;
+	private static final int CALLS = 100000;
+
+	private final AtomicInteger acquisitions = new AtomicInteger();
+	/** The version each compiled dataflow was made for. */
+	private final Map<Dataflow, Integer> compiledVersions = new ConcurrentHashMap<>();
+	private ComponentUtil util;
+	private ComponentImplementationCache cache;
+	private CompiledDataflowCache compiled;
+	private ComponentActivity activity;
+
+	/**
+	 * Stands in for the realization thread pool, running what is submitted to
+	 * it only when told to.
+	 */
+	private static class QueuedExecutor extends AbstractExecutorService {
+		final List<Callable<?>> submitted = new ArrayList<>();
+		private final List<Runnable> queue = new ArrayList<>();
+		private boolean shutdown;
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+			submitted.add(callable);
+			return super.newTaskFor(callable);
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			queue.add(task);
+		}
+
+		void runAll() {
+			for (Runnable task : queue)
+				task.run();
+			queue.clear();
+		}
+
+		@Override
+		public void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			shutdown = true;
+			List<Runnable> pending = new ArrayList<>(queue);
+			queue.clear();
+			return pending;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return shutdown;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		util = new ComponentUtil() {
+			@Override
+			public Family getFamily(URL registryBase, String familyName)
+					throws ComponentException {
+				throw new ComponentException("no profile in this test");
+			}
+		};
+		cache = new ComponentImplementationCache() {
+			@Override
+			public WorkflowBundle getImplementation(Version.ID id) {
+				WorkflowBundle bundle = new WorkflowBundle();
+				bundle.setMainWorkflow(new Workflow());
+				return bundle;
+			}
+		};
+		compiled = new CompiledDataflowCache() {
+			@Override
+			public Dataflow acquire(Version.ID id) {
+				acquisitions.incrementAndGet();
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				Dataflow dataflow = fakeDataflow(0);
+				compiledVersions.put(dataflow, id.getComponentVersion());
+				return dataflow;
+			}
+		};
+		activity = activity(null);
+		activity.configure(configuration(1));
+	}
+
+	private ComponentActivity activity(ExecutorService realizer) {
+		return new ComponentActivity(util, cache, compiled, realizer, null,
+				null, new ComponentExceptionFactory());
+	}
+
+	private static ObjectNode configuration(int version) {
+		ObjectNode json = JsonNodeFactory.instance.objectNode();
+		json.put(REGISTRY_BASE, "http://example.com/registry");
+		json.put(FAMILY_NAME, "family");
+		json.put(COMPONENT_NAME, "component");
+		json.put(COMPONENT_VERSION, version);
+		return json;
+	}
+
+	/**
+	 * Has each of <i>threads</i> threads fetch the realization <i>calls</i>
+	 * times, all starting together.
+	 *
+	 * @return The realizations seen.
+	 */
+	private List<DataflowActivity> hammer(int threads, final int calls)
+			throws Exception {
+		return runTogether(threads, new Callable<DataflowActivity>() {
+			@Override
+			public DataflowActivity call() throws Exception {
+				DataflowActivity first = activity.getComponentRealization();
+				for (int i = 1; i < calls; i++)
+					assertSame(first, activity.getComponentRealization());
+				return first;
+			}
+		});
+	}
+
+	@Test
+	public void testRealizedOnceUnderContention() throws Exception {
+		List<DataflowActivity> seen = hammer(THREADS, CALLS);
+		for (DataflowActivity realization : seen)
+			assertSame(seen.get(0), realization);
+		assertEquals(1, acquisitions.get());
+	}
+
+	@Test
+	public void testReconfigureRealizesAgain() throws Exception {
+		DataflowActivity first = activity.getComponentRealization();
+		activity.configure(activity.getConfiguration());
+		DataflowActivity second = activity.getComponentRealization();
+		assertSame(second, activity.getComponentRealization());
+		assertEquals(2, acquisitions.get());
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void testEagerRealization() throws Exception {
+		QueuedExecutor realizer = new QueuedExecutor();
+		ComponentActivity eager = activity(realizer);
+		eager.configure(configuration(1));
+		assertEquals(1, realizer.submitted.size());
+		assertEquals(0, acquisitions.get());
+
+		realizer.runAll();
+		assertEquals(1, acquisitions.get());
+		DataflowActivity realization = eager.getComponentRealization();
+		assertSame(realization, eager.getComponentRealization());
+		assertEquals(1, acquisitions.get());
+	}
+
+	@Test
+	public void testStaleRealizationNotPublished() throws Exception {
+		QueuedExecutor realizer = new QueuedExecutor();
+		ComponentActivity eager = activity(realizer);
+		eager.configure(configuration(1));
+		eager.configure(configuration(2));
+
+		// Cancelling does not stop a realization that is already running
+		try {
+			realizer.submitted.get(0).call();
+			fail("realization for the old configuration was published");
+		} catch (CancellationException e) {
+			// Expected
+		}
+		assertEquals(0, acquisitions.get());
+
+		realizer.runAll();
+		assertEquals(1, acquisitions.get());
+		assertEquals(Integer.valueOf(2), compiledVersions.get(eager
+				.getComponentRealization().getNestedDataflow()));
+	}
+}
@@ -0,0 +1,263 @@
+package org.apache.taverna.component;
+
+import static net.sf.taverna.t2.reference.T2ReferenceType.ErrorDocument;
+import static net.sf.taverna.t2.reference.T2ReferenceType.ReferenceSet;
+import static org.apache.taverna.component.ComponentActivityConfigurationBean.ERROR_CHANNEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.taverna.t2.invocation.InvocationContext;
+import net.sf.taverna.t2.reference.ErrorDocument;
+import net.sf.taverna.t2.reference.ErrorDocumentService;
+import net.sf.taverna.t2.reference.ListService;
+import net.sf.taverna.t2.reference.ReferenceService;
+import net.sf.taverna.t2.reference.T2Reference;
+import net.sf.taverna.t2.reference.T2ReferenceType;
+import net.sf.taverna.t2.workflowmodel.processor.activity.AsynchronousActivityCallback;
+
+import org.apache.taverna.component.api.profile.ExceptionHandling;
+import org.apache.taverna.component.api.profile.doc.HandleException;
+import org.apache.taverna.component.api.profile.doc.Replacement;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that results passed back from a component get an error channel, and
+ * that errors in them are replaced as the profile says.
+ */
+public class ProxyCallbackTest {
+	/** What was registered with the reference service, in order. */
+	private final List<Object> registered = new ArrayList<>();
+	/** What was registered as an error, in order. */
+	private final List<Throwable> registeredErrors = new ArrayList<>();
+	/** The results passed on by the proxy. */
+	private final List<Map<String, T2Reference>> received = new ArrayList<>();
+	/** Shared by the callbacks, as by those of one activity. */
+	private final Map<InvocationContext, T2Reference> emptyErrorLists = new ConcurrentHashMap<>();
+	private InvocationContext context;
+	private AsynchronousActivityCallback callback;
+	private ErrorDocument failure;
+
+	/**
+	 * Make an object of an interface from the answers to its methods, by
+	 * name; methods not answered return <tt>null</tt>.
+	 */
+	private static <T> T stub(Class<T> type, final Map<String, ?> answers) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] { type }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						return answers.get(method.getName());
+					}
+				}));
+	}
+
+	private static T2Reference reference(T2ReferenceType type, int depth,
+			boolean errors) {
+		Map<String, Object> answers = new HashMap<>();
+		answers.put("getReferenceType", type);
+		answers.put("getDepth", depth);
+		answers.put("containsErrors", errors);
+		answers.put("toString", type + " reference");
+		return stub(T2Reference.class, answers);
+	}
+
+	private static ErrorDocument errorDocument(String message, T2Reference id) {
+		Map<String, Object> answers = new HashMap<>();
+		answers.put("getExceptionMessage", message);
+		answers.put("getErrorReferences", Collections.emptySet());
+		answers.put("getStackTraceStrings", new ArrayList<>());
+		answers.put("getId", id);
+		return stub(ErrorDocument.class, answers);
+	}
+
+	@Before
+	public void setUp() {
+		failure = errorDocument("connection refused",
+				reference(ErrorDocument, 0, true));
+		final ErrorDocumentService errors = (ErrorDocumentService) Proxy
+				.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { ErrorDocumentService.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) {
+								if (method.getName().equals("getError"))
+									return failure;
+								if (!method.getName().equals("registerError"))
+									return null;
+								registeredErrors.add((Throwable) args[1]);
+								return errorDocument((String) args[0],
+										reference(ErrorDocument,
+												(Integer) args[2], true));
+							}
+						});
+		final ReferenceService references = (ReferenceService) Proxy
+				.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { ReferenceService.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) {
+								switch (method.getName()) {
+								case "getErrorDocumentService":
+									return errors;
+								case "getListService":
+									return stub(ListService.class,
+											Collections.<String, Object> emptyMap());
+								case "register":
+									registered.add(args[0]);
+									return reference(ReferenceSet,
+											(Integer) args[1], false);
+								default:
+									return null;
+								}
+							}
+						});
+		context = stub(InvocationContext.class, Collections.singletonMap(
+				"getReferenceService", references));
+		callback = (AsynchronousActivityCallback) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { AsynchronousActivityCallback.class },
+				new InvocationHandler() {
+					@Override
+					@SuppressWarnings("unchecked")
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("receiveResult"))
+							received.add((Map<String, T2Reference>) args[0]);
+						else if (method.getName().equals("getContext"))
+							return context;
+						return null;
+					}
+				});
+	}
+
+	/** Handling that replaces any exception with the given one. */
+	private static ExceptionHandling replacingWith(String id, String message) {
+		HandleException handler = new HandleException();
+		handler.setPattern(".*");
+		Replacement replacement = new Replacement();
+		replacement.setReplacementId(id);
+		replacement.setReplacementMessage(message);
+		handler.setReplacement(replacement);
+		org.apache.taverna.component.api.profile.doc.ExceptionHandling doc;
+		doc = new org.apache.taverna.component.api.profile.doc.ExceptionHandling();
+		doc.getHandleException().add(handler);
+		return new ExceptionHandling(doc);
+	}
+
+	private ProxyCallback proxy() {
+		return new ProxyCallback(callback, context, replacingWith(
+				"http://example.com/refused", "not available"),
+				new ComponentExceptionFactory(), emptyErrorLists);
+	}
+
+	@Test
+	public void testCleanResult() {
+		T2Reference value = reference(ReferenceSet, 0, false);
+		Map<String, T2Reference> data = Collections.singletonMap("out", value);
+		ProxyCallback proxy = proxy();
+		proxy.receiveResult(data, new int[0]);
+		proxy.receiveResult(data, new int[] { 1 });
+
+		assertEquals(2, received.size());
+		for (Map<String, T2Reference> result : received) {
+			assertEquals(2, result.size());
+			assertSame(value, result.get("out"));
+			assertSame(received.get(0).get(ERROR_CHANNEL),
+					result.get(ERROR_CHANNEL));
+		}
+		// One empty list of errors, registered once for both results
+		assertEquals(1, registered.size());
+		assertEquals(Collections.emptyList(), registered.get(0));
+		assertTrue(registeredErrors.isEmpty());
+	}
+
+	@Test
+	public void testEmptyErrorListSharedBetweenInvocations() {
+		T2Reference value = reference(ReferenceSet, 0, false);
+		Map<String, T2Reference> data = Collections.singletonMap("out", value);
+		// Each invocation of an activity has its own callback
+		proxy().receiveResult(data, new int[0]);
+		proxy().receiveResult(data, new int[0]);
+
+		assertEquals(2, received.size());
+		assertSame(received.get(0).get(ERROR_CHANNEL), received.get(1).get(
+				ERROR_CHANNEL));
+		assertEquals(1, registered.size());
+	}
+
+	@Test
+	public void testCleanResultIsView() {
+		Map<String, T2Reference> data = new HashMap<>();
+		data.put("a", reference(ReferenceSet, 0, false));
+		data.put("b", reference(ReferenceSet, 1, false));
+		proxy().receiveResult(data, new int[0]);
+
+		Map<String, T2Reference> result = received.get(0);
+		Map<String, T2Reference> expected = new HashMap<>(data);
+		expected.put(ERROR_CHANNEL, result.get(ERROR_CHANNEL));
+		assertEquals(expected, result);
+		assertEquals(expected.keySet(), result.keySet());
+		assertEquals(3, result.size());
+		try {
+			result.put("c", data.get("a"));
+			fail("result could be changed");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		// The component's own result is left alone
+		assertEquals(2, data.size());
+	}
+
+	@Test
+	public void testErrorReplaced() {
+		T2Reference clean = reference(ReferenceSet, 0, false);
+		T2Reference error = reference(ErrorDocument, 0, true);
+		Map<String, T2Reference> data = new HashMap<>();
+		data.put("good", clean);
+		data.put("bad", error);
+		proxy().receiveResult(data, new int[0]);
+
+		assertEquals(1, received.size());
+		Map<String, T2Reference> result = received.get(0);
+		assertEquals(3, result.size());
+		assertSame(clean, result.get("good"));
+		assertNotSame(error, result.get("bad"));
+		assertTrue(result.get("bad").containsErrors());
+
+		// One error for the port, one for the error channel
+		assertEquals(2, registeredErrors.size());
+		ComponentImplementationException replacement;
+		replacement = (ComponentImplementationException) registeredErrors
+				.get(0);
+		assertEquals("not available", replacement.getMessage());
+		assertEquals("http://example.com/refused",
+				replacement.getExceptionId());
+
+		// The error channel is the list of the errors found
+		assertEquals(1, registered.size());
+		assertEquals(1, ((List<?>) registered.get(0)).size());
+		// The component's own result is left alone
+		assertEquals(2, data.size());
+	}
+}
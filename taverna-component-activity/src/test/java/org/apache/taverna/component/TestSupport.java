@@ -0,0 +1,104 @@
+package org.apache.taverna.component;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+/**
+ * Fixtures shared by the tests of concurrent realization and caching.
+ *
+ * @author Donal Fellows
+ */
+public class TestSupport {
+	private static final long TIMEOUT = 60;
+
+	private TestSupport() {
+	}
+
+	/**
+	 * Make something that looks like a dataflow with no ports or processors.
+	 *
+	 * @param size
+	 *            How many bytes of memory it should hold, so that it stands in
+	 *            for a real compiled dataflow.
+	 */
+	public static Dataflow fakeDataflow(int size) {
+		final byte[] payload = new byte[size];
+		return (Dataflow) Proxy.newProxyInstance(
+				Dataflow.class.getClassLoader(),
+				new Class<?>[] { Dataflow.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						if (method.getName().equals("toString"))
+							return "fake dataflow of " + payload.length
+									+ " bytes";
+						if (method.getReturnType() == Set.class)
+							return Collections.emptySet();
+						if (method.getReturnType() == List.class)
+							return Collections.emptyList();
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Run some tasks, each on its own thread, with none starting until all
+	 * their threads are ready, so that they contend as much as possible.
+	 *
+	 * @return The results of the tasks, in the same order.
+	 * @throws Exception
+	 *             The failure of the first task (in order) that failed, or a
+	 *             timeout if a task takes too long.
+	 */
+	public static <T> List<T> runTogether(
+			final List<? extends Callable<T>> tasks) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<>();
+		try {
+			for (final Callable<T> task : tasks)
+				futures.add(pool.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						start.await();
+						return task.call();
+					}
+				}));
+			start.countDown();
+			List<T> results = new ArrayList<>();
+			for (Future<T> f : futures)
+				results.add(f.get(TIMEOUT, SECONDS));
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run a task on several threads at once, all starting together.
+	 *
+	 * @see #runTogether(List)
+	 */
+	public static <T> List<T> runTogether(int threads, Callable<T> task)
+			throws Exception {
+		return runTogether(Collections.nCopies(threads, task));
+	}
+}
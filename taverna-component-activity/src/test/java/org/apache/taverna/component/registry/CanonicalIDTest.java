@@ -0,0 +1,80 @@
+package org.apache.taverna.component.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.api.Version.CanonicalID;
+import org.junit.Test;
+
+/**
+ * Checks that canonical version identifiers are shared and compare by value,
+ * without resolving the registry's host.
+ */
+public class CanonicalIDTest {
+	/** Never resolves (RFC 2606), standing in for an unreachable DNS. */
+	private static final String UNRESOLVABLE = "http://registry.invalid/";
+
+	@Test
+	public void testInterned() throws Exception {
+		URL base = new URL(UNRESOLVABLE);
+		CanonicalID a = CanonicalID.of(new ComponentVersionIdentification(base,
+				"family", "component", 1));
+		CanonicalID b = CanonicalID.of(new Version.Identifier(new URL(
+				"http://registry.invalid"), "family", "component", 1));
+		assertSame(a, b);
+		assertSame(a, CanonicalID.of(a));
+		assertSame(a, CanonicalID.of(base, "family", "component", 1));
+		assertNotSame(a, CanonicalID.of(base, "family", "component", 2));
+		assertFalse(a.equals(CanonicalID.of(base, "family", "component", 2)));
+		assertFalse(a.equals(new Version.Identifier(base, "family",
+				"component", 1)));
+		assertTrue(a.mostlyEqualTo(CanonicalID
+				.of(base, "family", "component", 2)));
+		assertFalse(a.mostlyEqualTo(CanonicalID.of(base, "family", "other", 1)));
+	}
+
+	@Test
+	public void testUsableAsKey() throws Exception {
+		Map<Version.ID, String> map = new HashMap<>();
+		map.put(CanonicalID.of(new URL(UNRESOLVABLE), "f", "c", 1), "one");
+		assertEquals("one", map.get(CanonicalID.of(new Version.Identifier(
+				new URL(UNRESOLVABLE), "f", "c", 1))));
+		assertEquals(null,
+				map.get(CanonicalID.of(new URL(UNRESOLVABLE), "f", "c", null)));
+	}
+
+	@Test
+	public void testOtherIdentifiersHashByString() throws Exception {
+		Version.ID plain = new Version.Identifier(new URL(UNRESOLVABLE),
+				"family", "component", 1);
+		Version.ID bean = new ComponentVersionIdentification(new URL(
+				UNRESOLVABLE), "family", "component", 1);
+		assertEquals(plain, bean);
+		assertEquals(plain.hashCode(), bean.hashCode());
+	}
+
+	@Test
+	public void testDeserializedInterned() throws Exception {
+		CanonicalID id = CanonicalID.of(new URL(UNRESOLVABLE), "f", "c", 1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(id);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertSame(id, in.readObject());
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package org.apache.taverna.component.registry;
+
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Version;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+
+/**
+ * Checks that the implementation cache fetches each implementation once, no
+ * matter how many threads ask for it at the same time.
+ */
+public class ComponentImplementationCacheTest {
+	private static final int THREADS = 32;
+	private static final int KEYS = 4;
+	private static final int ROUNDS = 200;
+
+	private final AtomicInteger fetches = new AtomicInteger();
+	private final AtomicInteger batches = new AtomicInteger();
+	private volatile boolean registryDown;
+	private final ConcurrentMap<Version.ID, WorkflowBundle> fetched = new ConcurrentHashMap<>();
+	private ComponentImplementationCache cache;
+	private URL registry;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new URL("http://example.com/registry");
+		cache = new ComponentImplementationCache();
+		cache.setComponentUtil(new ComponentUtil() {
+			@Override
+			public Map<Version.ID, Version> getVersions(
+					Collection<? extends Version.ID> idents,
+					Map<Version.ID, ComponentException> failures) {
+				batches.incrementAndGet();
+				Map<Version.ID, Version> versions = new LinkedHashMap<>();
+				for (Version.ID ident : idents)
+					versions.put(ident, getVersion(ident));
+				return versions;
+			}
+
+			@Override
+			public Version getVersion(final Version.ID ident) {
+				return new ComponentVersion(null) {
+					@Override
+					protected Integer internalGetVersionNumber() {
+						return ident.getComponentVersion();
+					}
+
+					@Override
+					protected String internalGetDescription() {
+						return "";
+					}
+
+					@Override
+					protected WorkflowBundle internalGetImplementation()
+							throws ComponentException {
+						if (registryDown)
+							throw new ComponentException("registry unavailable");
+						fetches.incrementAndGet();
+						try {
+							Thread.sleep(50);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						WorkflowBundle bundle = new WorkflowBundle();
+						fetched.put(ident, bundle);
+						return bundle;
+					}
+
+					@Override
+					public URL getHelpURL() {
+						return null;
+					}
+				};
+			}
+		});
+	}
+
+	/** A fresh, equal identifier each time, as separate beans would have. */
+	private Version.ID id(int n) {
+		return new ComponentVersionIdentification(registry, "family",
+				"component" + n, 1);
+	}
+
+	@Test
+	public void testOneFetchPerIdentifier() throws Exception {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < ROUNDS; i++) {
+						Version.ID id = id((i + offset) % KEYS);
+						WorkflowBundle bundle = cache.getImplementation(id);
+						assertSame(fetched.get(id), bundle);
+					}
+					return null;
+				}
+			});
+		}
+		runTogether(tasks);
+		assertEquals(KEYS, fetches.get());
+		assertEquals(THREADS * ROUNDS,
+				cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.getHitCount() >= THREADS * ROUNDS - THREADS * KEYS);
+	}
+
+	@Test
+	public void testStaleServedWhileRefreshing() throws Exception {
+		cache.setTimeToLive(-1);
+		cache.setRefreshAhead(60000);
+		WorkflowBundle first = cache.getImplementation(id(0));
+		assertEquals(1, fetches.get());
+
+		// Expired, so served stale while a replacement is fetched
+		assertSame(first, cache.getImplementation(id(0)));
+		assertEquals(1, cache.getStaleServedCount());
+		for (int i = 0; i < 100 && fetches.get() < 2; i++)
+			Thread.sleep(50);
+		assertEquals(2, fetches.get());
+	}
+
+	@Test
+	public void testStaleServedWhileRegistryDown() throws Exception {
+		cache.setTimeToLive(-1);
+		cache.setRefreshAhead(60000);
+		WorkflowBundle first = cache.getImplementation(id(0));
+		registryDown = true;
+		for (int i = 0; i < 5; i++) {
+			assertSame(first, cache.getImplementation(id(0)));
+			Thread.sleep(100);
+		}
+		assertEquals(5, cache.getStaleServedCount());
+		assertTrue(cache.getRefreshFailureCount() > 0);
+	}
+
+	@Test
+	public void testPrefetchInOneBatch() throws Exception {
+		cache.prefetch(Arrays.asList(id(0), id(1), id(2), id(3), id(0)));
+		assertEquals(1, batches.get());
+		assertEquals(KEYS, fetches.get());
+		for (int i = 0; i < KEYS; i++) {
+			WorkflowBundle bundle = cache.getImplementation(id(i));
+			assertSame(fetched.get(id(i)), bundle);
+		}
+		assertEquals(KEYS, fetches.get());
+
+		// Nothing left to fetch, so the registry is not asked again
+		cache.prefetch(Arrays.asList(id(0), id(1)));
+		assertEquals(1, batches.get());
+	}
+
+	@Test
+	public void testPrefetchSharedWithLoad() throws Exception {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				cache.prefetch(Arrays.asList(id(0), id(1), id(2), id(3)));
+				return null;
+			}
+		});
+		for (int t = 0; t < KEYS; t++) {
+			final int n = t;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					WorkflowBundle bundle = cache.getImplementation(id(n));
+					assertSame(fetched.get(id(n)), bundle);
+					return null;
+				}
+			});
+		}
+		runTogether(tasks);
+		// However they interleave, each implementation is fetched once
+		assertEquals(KEYS, fetches.get());
+	}
+
+	@Test(expected = ComponentException.class)
+	public void testFailureReported() throws Exception {
+		cache.setComponentUtil(new ComponentUtil() {
+			@Override
+			public Version getVersion(Version.ID ident) {
+				throw new IllegalStateException("registry unavailable");
+			}
+		});
+		cache.getImplementation(id(0));
+	}
+}
@@ -0,0 +1,346 @@
+package org.apache.taverna.component.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Family;
+import org.apache.taverna.component.api.License;
+import org.apache.taverna.component.api.SharingPolicy;
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.api.profile.Profile;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that readers of a registry's families and profiles see consistent
+ * snapshots while other threads are adding to them, that lookups by key agree
+ * with the snapshots, and that expired snapshots are fetched again.
+ */
+public class ComponentRegistrySnapshotTest {
+	private static final int WRITERS = 4;
+	private static final int READERS = 8;
+	private static final int ADDS = 100;
+
+	private InMemoryRegistry registry;
+
+	/**
+	 * Something with a name (or id) and a description, and nothing else. Equal
+	 * to anything of the same type and name.
+	 */
+	private static <T> T named(final Class<T> type, final String name,
+			final String description) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] { type }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "getName":
+						case "getId":
+						case "getAbbreviation":
+						case "toString":
+							return name;
+						case "getDescription":
+							return description;
+						case "hashCode":
+							return name.hashCode();
+						case "equals":
+							return type.isInstance(args[0])
+									&& name.equals(args[0].toString());
+						default:
+							return null;
+						}
+					}
+				}));
+	}
+
+	private static <T> T named(Class<T> type, String name) {
+		return named(type, name, "");
+	}
+
+	/**
+	 * A registry whose backing store is a pair of concurrent maps. Families
+	 * are made afresh each time they are listed, as a remote registry would.
+	 */
+	private static class InMemoryRegistry extends ComponentRegistry {
+		/** Family descriptions, by family name. */
+		final Map<String, String> families = new ConcurrentHashMap<>();
+		final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+		final AtomicInteger familyListings = new AtomicInteger();
+
+		InMemoryRegistry() throws Exception {
+			super(new URL("http://example.com/registry"));
+			profiles.put("base", named(Profile.class, "base"));
+		}
+
+		@Override
+		protected boolean populateFamilyCache(Map<String, Family> families) {
+			familyListings.incrementAndGet();
+			for (Map.Entry<String, String> entry : this.families.entrySet())
+				families.put(entry.getKey(), named(Family.class,
+						entry.getKey(), entry.getValue()));
+			return true;
+		}
+
+		@Override
+		protected Family internalCreateComponentFamily(String familyName,
+				Profile componentProfile, String description, License license,
+				SharingPolicy sharingPolicy) {
+			families.put(familyName, description);
+			return named(Family.class, familyName, description);
+		}
+
+		@Override
+		protected void internalRemoveComponentFamily(Family componentFamily) {
+			families.remove(componentFamily.getName());
+		}
+
+		@Override
+		protected void populateProfileCache(List<Profile> profiles) {
+			profiles.addAll(this.profiles.values());
+		}
+
+		@Override
+		protected Profile internalAddComponentProfile(Profile componentProfile,
+				License license, SharingPolicy sharingPolicy) {
+			profiles.put(componentProfile.getId(), componentProfile);
+			return componentProfile;
+		}
+
+		@Override
+		protected void populatePermissionCache(List<SharingPolicy> permissions) {
+		}
+
+		@Override
+		protected void populateLicenseCache(List<License> licenses) {
+			for (String abbreviation : new String[] { "CC-BY", "GPL", "MIT" })
+				licenses.add(named(License.class, abbreviation));
+		}
+
+		License license(String abbreviation) throws ComponentException {
+			return getLicenseByAbbreviation(abbreviation);
+		}
+
+		@Override
+		public License getPreferredLicense() {
+			return null;
+		}
+
+		@Override
+		public Set<Version.ID> searchForComponents(String prefixString,
+				String text) {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public String getRegistryTypeName() {
+			return "Memory";
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new InMemoryRegistry();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testProfilesNotModifiable() throws Exception {
+		registry.getComponentProfiles().clear();
+	}
+
+	@Test
+	public void testRemovedFamilyGone() throws Exception {
+		Profile profile = registry.getComponentProfile("base");
+		Family family = registry.createComponentFamily("f", profile, "", null,
+				null);
+		registry.createComponentFamily("g", profile, "", null, null);
+		registry.removeComponentFamily(family);
+		assertEquals(null, registry.getComponentFamily("f"));
+		assertEquals(1, registry.getComponentFamilies().size());
+	}
+
+	@Test
+	public void testIndexedLookups() throws Exception {
+		for (int i = 0; i < ADDS; i++)
+			registry.addComponentProfile(named(Profile.class, "p" + i), null,
+					null);
+		Profile p7 = registry.getComponentProfile("p7");
+		assertEquals("p7", p7.getId());
+		assertSame(p7, registry.getComponentProfileByName("p7"));
+		assertSame(p7, registry.addComponentProfile(
+				named(Profile.class, "p7"), null, null));
+		assertEquals(ADDS + 1, registry.getComponentProfiles().size());
+		assertNull(registry.getComponentProfile("missing"));
+
+		// Indexes follow later additions
+		Profile late = registry.addComponentProfile(
+				named(Profile.class, "late"), null, null);
+		assertSame(late, registry.getComponentProfile("late"));
+
+		assertEquals("GPL", registry.license("GPL").getAbbreviation());
+		assertNull(registry.license("BSD"));
+	}
+
+	@Test
+	public void testEmptyListingKept() throws Exception {
+		assertEquals(0, registry.getComponentFamilies().size());
+		assertNull(registry.getComponentFamily("f"));
+		assertEquals(1, registry.familyListings.get());
+	}
+
+	@Test
+	public void testExpiredListingFetchedAgain() throws Exception {
+		registry.setMetadataTimeToLive(60000);
+		registry.families.put("a", "first");
+		registry.families.put("b", "first");
+		assertNotNull(registry.getComponentFamily("a"));
+		Family b = registry.getComponentFamily("b");
+		assertEquals(1, registry.familyListings.get());
+
+		registry.families.put("b", "second");
+		registry.families.put("c", "first");
+		registry.families.remove("a");
+		// Still current, so not fetched again
+		assertSame(b, registry.getComponentFamily("b"));
+		assertEquals(1, registry.familyListings.get());
+
+		registry.expireMetadata();
+		assertNull(registry.getComponentFamily("a"));
+		assertNotSame(b, registry.getComponentFamily("b"));
+		assertEquals("second", registry.getComponentFamily("b")
+				.getDescription());
+		assertNotNull(registry.getComponentFamily("c"));
+		assertEquals(2, registry.familyListings.get());
+	}
+
+	@Test
+	public void testUnchangedItemsKeepIdentity() throws Exception {
+		registry.setMetadataTimeToLive(0);
+		registry.families.put("a", "first");
+		Family a = registry.getComponentFamily("a");
+		Thread.sleep(5);
+		assertSame(a, registry.getComponentFamily("a"));
+		assertEquals(2, registry.familyListings.get());
+	}
+
+	@Test
+	public void testBackgroundRefreshServesOldListing() throws Exception {
+		final List<Runnable> queued = new ArrayList<>();
+		registry.setMetadataRefresher(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		});
+		registry.families.put("a", "first");
+		assertNotNull(registry.getComponentFamily("a"));
+		registry.families.put("b", "first");
+		registry.expireMetadata();
+
+		// Old listing served, with one refresh queued however often asked
+		assertNull(registry.getComponentFamily("b"));
+		assertNull(registry.getComponentFamily("b"));
+		assertEquals(1, queued.size());
+		queued.get(0).run();
+		assertNotNull(registry.getComponentFamily("b"));
+		assertEquals(2, registry.familyListings.get());
+	}
+
+	@Test
+	public void testReadersNeverSeeTornState() throws Exception {
+		final Profile base = registry.getComponentProfile("base");
+		assertNotNull(base);
+		ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		List<Future<?>> writers = new ArrayList<>();
+		List<Future<?>> readers = new ArrayList<>();
+		try {
+			for (int w = 0; w < WRITERS; w++) {
+				final int writer = w;
+				writers.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws ComponentException,
+							InterruptedException {
+						start.await();
+						for (int i = 0; i < ADDS; i++) {
+							String name = "w" + writer + "-" + i;
+							registry.createComponentFamily(name, base, "",
+									null, null);
+							registry.addComponentProfile(
+									named(Profile.class, name), null, null);
+						}
+						return null;
+					}
+				}));
+			}
+			for (int r = 0; r < READERS; r++)
+				readers.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws ComponentException,
+							InterruptedException {
+						start.await();
+						int lastFamilies = 0, lastProfiles = 0;
+						while (writing.get()) {
+							List<Family> families = registry
+									.getComponentFamilies();
+							List<Profile> profiles = registry
+									.getComponentProfiles();
+							// Only ever added to, so never seen to shrink
+							assertTrue(families.size() >= lastFamilies);
+							assertTrue(profiles.size() >= lastProfiles);
+							for (Family f : families)
+								assertNotNull(f.getName());
+							for (Profile p : profiles)
+								assertNotNull(p.getId());
+							lastFamilies = families.size();
+							lastProfiles = profiles.size();
+						}
+						return null;
+					}
+				}));
+			start.countDown();
+			for (Future<?> f : writers)
+				f.get(60, TimeUnit.SECONDS);
+			writing.set(false);
+			for (Future<?> f : readers)
+				f.get(60, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertEquals(WRITERS * ADDS, registry.getComponentFamilies().size());
+		assertEquals(WRITERS * ADDS + 1, registry.getComponentProfiles()
+				.size());
+		for (int w = 0; w < WRITERS; w++)
+			for (int i = 0; i < ADDS; i++) {
+				assertNotNull(registry.getComponentFamily("w" + w + "-" + i));
+				assertNotNull(registry.getComponentProfile("w" + w + "-" + i));
+			}
+	}
+}
@@ -0,0 +1,71 @@
+package org.apache.taverna.component.registry;
+
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.component.api.Registry;
+import org.apache.taverna.component.registry.local.LocalComponentRegistryFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a registry is looked up once, however many threads ask for it
+ * at the same time.
+ */
+public class ComponentUtilTest {
+	private static final int THREADS = 16;
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private ComponentUtil util;
+
+	@Before
+	public void setUp() {
+		util = new ComponentUtil();
+		util.setFileLocator(new LocalComponentRegistryFactory() {
+			@Override
+			public Registry getComponentRegistry(URL registryBase) {
+				lookups.incrementAndGet();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return (Registry) Proxy.newProxyInstance(
+						Registry.class.getClassLoader(),
+						new Class<?>[] { Registry.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) {
+								return null;
+							}
+						});
+			}
+		});
+	}
+
+	@Test
+	public void testConcurrentLookupResolvesOnce() throws Exception {
+		final URL base = new URL("file:/tmp/registry");
+		List<Registry> results = runTogether(THREADS, new Callable<Registry>() {
+			@Override
+			public Registry call() throws Exception {
+				return util.getRegistry(base);
+			}
+		});
+		for (Registry registry : results)
+			assertSame(results.get(0), registry);
+		assertEquals(1, lookups.get());
+		assertSame(util.getRegistry(base), util.getRegistry(base));
+		assertEquals(1, lookups.get());
+	}
+}
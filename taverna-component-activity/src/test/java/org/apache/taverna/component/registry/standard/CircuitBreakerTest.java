@@ -0,0 +1,85 @@
+package org.apache.taverna.component.registry.standard;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.taverna.component.registry.standard.CircuitBreaker.OpenException;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+	@Test
+	public void testOpensAfterThreshold() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+		for (int i = 0; i < 3; i++) {
+			breaker.checkAllowed();
+			breaker.recordFailure();
+		}
+		assertTrue(breaker.isOpen());
+		try {
+			breaker.checkAllowed();
+			fail("breaker should be open");
+		} catch (OpenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSuccessResetsCount() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000);
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		assertFalse(breaker.isOpen());
+		breaker.checkAllowed();
+	}
+
+	@Test
+	public void testSingleTrialAfterOpenTime() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+		breaker.recordFailure();
+		breaker.checkAllowed();
+		try {
+			breaker.checkAllowed();
+			fail("only one trial request should be allowed");
+		} catch (OpenException e) {
+			// expected
+		}
+		breaker.recordSuccess();
+		assertFalse(breaker.isOpen());
+		breaker.checkAllowed();
+	}
+
+	@Test
+	public void testRequestNotMadeLeavesCountAlone() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+		breaker.recordFailure();
+		breaker.checkAllowed();
+		breaker.recordNotMade();
+		assertTrue(breaker.isOpen());
+		// The trial was never made, so another may be
+		breaker.checkAllowed();
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 0, 60000);
+		for (int i = 0; i < 100; i++)
+			breaker.recordFailure();
+		assertFalse(breaker.isOpen());
+		breaker.checkAllowed();
+	}
+
+	@Test
+	public void testRetryDelaysBounded() {
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+		assertTrue(policy.shouldRetry(10));
+		assertFalse(policy.shouldRetry(11));
+		for (int attempt = 1; attempt <= 10; attempt++) {
+			long delay = policy.getDelay(attempt);
+			long cap = Math.min(1000, 100L << (attempt - 1));
+			assertTrue(delay >= cap / 2 && delay <= cap);
+		}
+		assertFalse(RetryPolicy.NONE.shouldRetry(1));
+	}
+}
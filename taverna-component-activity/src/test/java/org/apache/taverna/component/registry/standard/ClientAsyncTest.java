@@ -0,0 +1,135 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.registry.api.LicenseList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that the background variants of the client's requests run at the
+ * same time, and report their results and failures through {@link
+ * Client#await(Future)}.
+ */
+public class ClientAsyncTest {
+	private static final int REQUESTS = 4;
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private ExecutorService executor;
+	private URL base;
+	/** Held until all the requests have arrived at the server. */
+	private final CountDownLatch arrived = new CountDownLatch(REQUESTS);
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		serverThreads = newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.createContext("/licenses.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				arrived.countDown();
+				try {
+					arrived.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				byte[] body = ("<licenses><license><unique-name>"
+						+ exchange.getRequestURI().getQuery()
+						+ "</unique-name></license></licenses>")
+						.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type",
+						"application/xml");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			}
+		});
+		server.start();
+		base = new URL("http://localhost:" + server.getAddress().getPort());
+		executor = newFixedThreadPool(REQUESTS);
+	}
+
+	@After
+	public void stopServer() {
+		executor.shutdownNow();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	private Client client() throws Exception {
+		return new Client(jaxbContext, base, false, null, new PooledTransport(
+				REQUESTS, 5000, 5000, 60000), null, Compression.NONE,
+				executor, RetryPolicy.NONE, new CircuitBreaker(
+						base.toString(), 0, 0));
+	}
+
+	@Test
+	public void testRequestsRunTogether() throws Exception {
+		Client client = client();
+		List<Future<LicenseList>> futures = new ArrayList<>();
+		// The server answers none of these until it has seen all of them
+		for (int i = 0; i < REQUESTS; i++)
+			futures.add(client.getAsync(LicenseList.class, "/licenses.xml?l"
+					+ i));
+		for (int i = 0; i < REQUESTS; i++)
+			assertEquals("l" + i, Client.await(futures.get(i)).getLicense()
+					.get(0).getUniqueName());
+	}
+
+	@Test
+	public void testFailureReported() throws Exception {
+		try {
+			Client.await(client().getAsync(LicenseList.class, "/missing.xml"));
+			fail("missing resource fetched");
+		} catch (ComponentException e) {
+			// Expected; not wrapped in an ExecutionException
+		}
+	}
+
+	@Test
+	public void testVerifyInBackground() throws Exception {
+		assertFalse(Client.await(client().verifyAsync()));
+	}
+
+	@Test
+	public void testInterruptedWait() throws Exception {
+		Future<LicenseList> future = client().getAsync(LicenseList.class,
+				"/licenses.xml?waiting");
+		Thread.currentThread().interrupt();
+		try {
+			Client.await(future);
+			fail("wait not interrupted");
+		} catch (ComponentException e) {
+			// Expected; the request is abandoned
+		} finally {
+			Thread.interrupted();
+		}
+		assertTrue(future.isCancelled());
+	}
+}
@@ -0,0 +1,113 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.taverna.component.registry.api.LicenseList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the client's handling of compressed responses against a stub server.
+ */
+public class ClientCompressionTest {
+	private static final String LICENSES = "<licenses><license>"
+			+ "<unique-name>by-nd</unique-name></license></licenses>";
+
+	private HttpServer server;
+	private URL base;
+	private volatile String acceptEncoding;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/licenses.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				acceptEncoding = exchange.getRequestHeaders().getFirst(
+						"Accept-Encoding");
+				String encoding = exchange.getRequestURI().getQuery();
+				byte[] body = encode(LICENSES.getBytes("UTF-8"), encoding);
+				exchange.getResponseHeaders().add("Content-Type",
+						"application/xml");
+				if (encoding != null)
+					exchange.getResponseHeaders().add("Content-Encoding",
+							encoding);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			}
+		});
+		server.start();
+		base = new URL("http://localhost:" + server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static byte[] encode(byte[] data, String encoding)
+			throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OutputStream os = baos;
+		if ("gzip".equals(encoding))
+			os = new GZIPOutputStream(baos);
+		else if ("deflate".equals(encoding))
+			os = new DeflaterOutputStream(baos);
+		os.write(data);
+		os.close();
+		return baos.toByteArray();
+	}
+
+	private Client client(Compression compression) throws Exception {
+		return new Client(jaxbContext, base, false, null,
+				new PooledTransport(2, 5000, 5000, 60000), null, compression,
+				newSingleThreadExecutor(), RetryPolicy.NONE,
+				new CircuitBreaker(base.toString(), 0, 0));
+	}
+
+	private String fetch(Client client, String encoding) throws Exception {
+		return client
+				.get(LicenseList.class, "/licenses.xml?" + encoding)
+				.getLicense().get(0).getUniqueName();
+	}
+
+	@Test
+	public void testGzipResponse() throws Exception {
+		assertEquals("by-nd", fetch(client(Compression.RESPONSES), "gzip"));
+		assertEquals("gzip, deflate", acceptEncoding);
+	}
+
+	@Test
+	public void testDeflateResponse() throws Exception {
+		assertEquals("by-nd", fetch(client(Compression.RESPONSES), "deflate"));
+	}
+
+	@Test
+	public void testIdentityResponse() throws Exception {
+		assertEquals("by-nd", fetch(client(Compression.RESPONSES), "identity"));
+	}
+
+	@Test
+	public void testCompressionDisabled() throws Exception {
+		assertEquals("by-nd", fetch(client(Compression.NONE), "identity"));
+		assertNull(acceptEncoding);
+	}
+}
@@ -0,0 +1,166 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.registry.api.LicenseList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that only failures of the server count against it: running out of
+ * our own connections neither opens the circuit breaker nor is retried.
+ */
+public class ClientFailureAccountingTest {
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private ExecutorService executor;
+	private URL base;
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final CountDownLatch arrived = new CountDownLatch(1);
+	private final AtomicInteger requests = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		serverThreads = newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.createContext("/held.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				arrived.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		server.createContext("/broken.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		base = new URL("http://localhost:" + server.getAddress().getPort());
+		executor = newSingleThreadExecutor();
+	}
+
+	@After
+	public void stopServer() {
+		release.countDown();
+		executor.shutdownNow();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	private Client client(Transport transport, CircuitBreaker breaker,
+			RetryPolicy retries) throws Exception {
+		return new Client(jaxbContext, base, false, null, transport, null,
+				Compression.NONE, executor, retries, breaker);
+	}
+
+	@Test
+	public void testPoolExhaustionNotCounted() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(base.toString(), 1, 60000);
+		Client client = client(new PooledTransport(1, 100, 5000, 60000),
+				breaker, new RetryPolicy(3, 10, 10));
+		Future<LicenseList> holder = client.getAsync(LicenseList.class,
+				"/held.xml");
+		assertTrue(arrived.await(10, TimeUnit.SECONDS));
+		try {
+			client.get(LicenseList.class, "/broken.xml");
+			fail("got a connection from an exhausted pool");
+		} catch (ComponentException e) {
+			assertTrue(e.getCause() instanceof ConnectionPoolTimeoutException);
+		}
+		assertFalse(breaker.isOpen());
+		assertEquals(0, requests.get());
+
+		// Whereas the server failing does count
+		release.countDown();
+		try {
+			Client.await(holder);
+			fail("server failure not reported");
+		} catch (ComponentException e) {
+			// Expected
+		}
+		assertTrue(breaker.isOpen());
+	}
+
+	@Test
+	public void testServerFailureRetried() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(base.toString(), 0, 0);
+		Client client = client(new PooledTransport(1, 100, 5000, 60000),
+				breaker, new RetryPolicy(2, 10, 10));
+		try {
+			client.get(LicenseList.class, "/broken.xml");
+			fail("server failure not reported");
+		} catch (ComponentException e) {
+			// Expected
+		}
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void testConnectionGivenBackWhenSetUpFails() throws Exception {
+		final PooledTransport pool = new PooledTransport(1, 100, 5000, 60000);
+		Transport connected = new Transport() {
+			@Override
+			public HttpURLConnection open(String method, String url)
+					throws IOException {
+				HttpURLConnection conn = pool.open(method, url);
+				// Too late to set request headers after this
+				conn.connect();
+				return conn;
+			}
+
+			@Override
+			public void release(HttpURLConnection conn) {
+				pool.release(conn);
+			}
+
+			@Override
+			public void discard(HttpURLConnection conn) {
+				pool.discard(conn);
+			}
+		};
+		Client client = client(connected, new CircuitBreaker(
+				base.toString(), 0, 0), RetryPolicy.NONE);
+		for (int i = 0; i < 3; i++)
+			try {
+				client.get(LicenseList.class, "/broken.xml");
+				fail("request on a connected connection was set up");
+			} catch (ComponentException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		// Each failure handed its connection back, so one is still free
+		pool.discard(pool.open("GET", base + "/broken.xml"));
+	}
+}
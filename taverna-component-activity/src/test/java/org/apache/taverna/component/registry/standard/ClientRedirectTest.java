@@ -0,0 +1,181 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.component.registry.api.LicenseList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that the client remembers permanent redirects, and only those, and
+ * that it forgets them when their targets stop answering.
+ */
+public class ClientRedirectTest {
+	private static final String LICENSES = "<licenses><license>"
+			+ "<unique-name>by-nd</unique-name></license></licenses>";
+
+	private HttpServer server;
+	private URL base;
+	private final AtomicInteger redirected = new AtomicInteger();
+	/** Where <tt>/moving</tt> redirects to. */
+	private volatile String movingTo = "/old";
+	/** How <tt>/old</tt> answers; with a redirect if 3xx. */
+	private volatile int oldStatus = 200;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/moved", redirectTo(301, "/licenses.xml"));
+		server.createContext("/moved308", redirectTo(308, "/licenses.xml"));
+		server.createContext("/elsewhere", redirectTo(302, "/licenses.xml"));
+		server.createContext("/licenses.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				sendLicenses(exchange);
+			}
+		});
+		server.createContext("/moving", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				redirectTo(301, movingTo).handle(exchange);
+			}
+		});
+		server.createContext("/old", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (oldStatus == 200)
+					sendLicenses(exchange);
+				else {
+					if (oldStatus / 100 == 3)
+						exchange.getResponseHeaders().add("Location",
+								"/licenses.xml");
+					exchange.sendResponseHeaders(oldStatus, -1);
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		base = new URL("http://localhost:" + server.getAddress().getPort());
+	}
+
+	private static void sendLicenses(HttpExchange exchange)
+			throws IOException {
+		byte[] body = LICENSES.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private HttpHandler redirectTo(final int code, final String location) {
+		return new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				redirected.incrementAndGet();
+				exchange.getResponseHeaders().add("Location", location);
+				exchange.sendResponseHeaders(code, -1);
+				exchange.close();
+			}
+		};
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private Client client() throws Exception {
+		return new Client(jaxbContext, base, false, null, new PooledTransport(
+				2, 5000, 5000, 60000), null, Compression.NONE,
+				newSingleThreadExecutor(), RetryPolicy.NONE,
+				new CircuitBreaker(base.toString(), 0, 0));
+	}
+
+	private static String fetch(Client client, String uri) throws Exception {
+		return client.get(LicenseList.class, uri).getLicense().get(0)
+				.getUniqueName();
+	}
+
+	@Test
+	public void testPermanentRedirectRemembered() throws Exception {
+		Client client = client();
+		for (int i = 0; i < 3; i++)
+			assertEquals("by-nd", fetch(client, "/moved"));
+		assertEquals(1, redirected.get());
+		assertEquals(1, client.getRedirectHopCount());
+		assertEquals(2, client.getRedirectSkippedCount());
+		assertEquals(1, client.getRedirectCacheSize());
+	}
+
+	@Test
+	public void testPermanentRedirect308Remembered() throws Exception {
+		Client client = client();
+		assertEquals("by-nd", fetch(client, "/moved308"));
+		assertEquals("by-nd", fetch(client, "/moved308"));
+		assertEquals(1, redirected.get());
+	}
+
+	@Test
+	public void testTemporaryRedirectNotRemembered() throws Exception {
+		Client client = client();
+		assertEquals("by-nd", fetch(client, "/elsewhere"));
+		assertEquals("by-nd", fetch(client, "/elsewhere"));
+		assertEquals(2, redirected.get());
+		assertEquals(2, client.getRedirectHopCount());
+		assertEquals(0, client.getRedirectCacheSize());
+	}
+
+	/**
+	 * Have the remembered target of a redirect answer with the given status,
+	 * and the redirect itself move elsewhere.
+	 */
+	private void checkStaleTargetForgotten(int status) throws Exception {
+		Client client = client();
+		assertEquals("by-nd", fetch(client, "/moving"));
+		assertEquals(1, redirected.get());
+
+		oldStatus = status;
+		movingTo = "/licenses.xml";
+		assertEquals("by-nd", fetch(client, "/moving"));
+		assertEquals(2, redirected.get());
+		assertEquals(1, client.getRedirectCacheSize());
+
+		// The new target is remembered in place of the old
+		assertEquals("by-nd", fetch(client, "/moving"));
+		assertEquals(2, redirected.get());
+	}
+
+	@Test
+	public void testMissingTargetForgotten() throws Exception {
+		checkStaleTargetForgotten(404);
+	}
+
+	@Test
+	public void testGoneTargetForgotten() throws Exception {
+		checkStaleTargetForgotten(410);
+	}
+
+	@Test
+	public void testFailingTargetForgotten() throws Exception {
+		checkStaleTargetForgotten(503);
+	}
+
+	@Test
+	public void testRedirectedTargetForgotten() throws Exception {
+		checkStaleTargetForgotten(302);
+	}
+}
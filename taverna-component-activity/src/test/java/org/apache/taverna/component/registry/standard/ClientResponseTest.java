@@ -0,0 +1,117 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.apache.taverna.component.registry.standard.NewComponentRegistry.jaxbContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.registry.api.LicenseList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that the client reads responses straight from the stream, and finds
+ * the reason in error documents.
+ */
+public class ClientResponseTest {
+	private HttpServer server;
+	private URL base;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		respond("/licenses.xml", 200, "<?xml version='1.0'?>\n"
+				+ "<!-- a comment first -->\n<licenses>\n"
+				+ "  <license><unique-name>by-nd</unique-name></license>\n"
+				+ "  <license><unique-name>by-sa</unique-name></license>\n"
+				+ "</licenses>");
+		respond("/truncated.xml", 200, "<licenses><license><unique-name>");
+		respond("/bad.xml", 400, "<error><code>400</code>"
+				+ "<reason>no such licence</reason></error>");
+		respond("/nested.xml", 403, "<error><details><code>403</code>"
+				+ "<reason>not yours</reason></details></error>");
+		respond("/unexplained.xml", 400, "<error><code>400</code></error>");
+		server.start();
+		base = new URL("http://localhost:" + server.getAddress().getPort());
+	}
+
+	private void respond(String path, final int code, String document)
+			throws IOException {
+		final byte[] body = document.getBytes("UTF-8");
+		server.createContext(path, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Content-Type",
+						"application/xml");
+				exchange.sendResponseHeaders(code, body.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			}
+		});
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private Client client() throws Exception {
+		return new Client(jaxbContext, base, false, null, new PooledTransport(
+				2, 5000, 5000, 60000), null, Compression.NONE,
+				newSingleThreadExecutor(), RetryPolicy.NONE,
+				new CircuitBreaker(base.toString(), 0, 0));
+	}
+
+	private String failure(String uri) throws Exception {
+		try {
+			client().get(LicenseList.class, uri);
+		} catch (ComponentException e) {
+			return e.getMessage();
+		}
+		fail("request for " + uri + " succeeded");
+		return null;
+	}
+
+	@Test
+	public void testUnmarshalled() throws Exception {
+		LicenseList licenses = client().get(LicenseList.class,
+				"/licenses.xml");
+		assertEquals(2, licenses.getLicense().size());
+		assertEquals("by-nd", licenses.getLicense().get(0).getUniqueName());
+		assertEquals("by-sa", licenses.getLicense().get(1).getUniqueName());
+	}
+
+	@Test
+	public void testMalformedResponse() throws Exception {
+		assertTrue(failure("/truncated.xml").contains("unmarshalling"));
+	}
+
+	@Test
+	public void testReasonFound() throws Exception {
+		assertTrue(failure("/bad.xml").endsWith("(400): no such licence"));
+	}
+
+	@Test
+	public void testNestedReasonFound() throws Exception {
+		assertTrue(failure("/nested.xml").endsWith("(403): not yours"));
+	}
+
+	@Test
+	public void testMissingReason() throws Exception {
+		assertTrue(failure("/unexplained.xml").endsWith(
+				"(400): unknown reason (400)"));
+	}
+}
@@ -0,0 +1,45 @@
+package org.apache.taverna.component.registry.standard;
+
+import static org.apache.taverna.component.registry.standard.ConditionalGetCache.key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ConditionalGetCacheTest {
+	private static ConditionalGetCache.Entry entry(int size) {
+		return new ConditionalGetCache.Entry(new byte[size], "\"tag\"", null);
+	}
+
+	@Test
+	public void testKeyedByIdentity() {
+		ConditionalGetCache cache = new ConditionalGetCache(100);
+		cache.put(key("http://example.com/a", "abc"), entry(10));
+		assertNotNull(cache.get(key("http://example.com/a", "abc")));
+		assertNull(cache.get(key("http://example.com/a", null)));
+		assertNull(cache.get(key("http://example.com/a", "def")));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ConditionalGetCache cache = new ConditionalGetCache(100);
+		cache.put("a", entry(40));
+		cache.put("b", entry(40));
+		cache.get("a");
+		cache.put("c", entry(40));
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	public void testOversizedNotCached() {
+		ConditionalGetCache cache = new ConditionalGetCache(100);
+		cache.put("a", entry(40));
+		cache.put("a", entry(400));
+		assertNull(cache.get("a"));
+		cache.put("b", entry(100));
+		assertEquals(100, cache.get("b").body.length);
+	}
+}
@@ -0,0 +1,78 @@
+package org.apache.taverna.component.registry.standard;
+
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that registry verification is done once per base URL, and its
+ * answer remembered for as long as configured.
+ */
+public class NewComponentRegistryFactoryTest {
+	private static final int THREADS = 16;
+
+	private final AtomicInteger checks = new AtomicInteger();
+	private volatile boolean present = true;
+	private NewComponentRegistryFactory factory;
+	private URL base;
+
+	@Before
+	public void setUp() throws Exception {
+		base = new URL("http://example.com/registry");
+		factory = new NewComponentRegistryFactory() {
+			@Override
+			protected boolean checkBase(URL registryBase) {
+				checks.incrementAndGet();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return present;
+			}
+		};
+	}
+
+	@Test
+	public void testConcurrentVerificationChecksOnce() throws Exception {
+		List<Boolean> results = runTogether(THREADS, new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return factory.verifyBase(base);
+			}
+		});
+		for (boolean verified : results)
+			assertTrue(verified);
+		assertEquals(1, checks.get());
+	}
+
+	@Test
+	public void testVerificationRemembered() throws Exception {
+		assertTrue(factory.verifyBase(base));
+		present = false;
+		assertTrue(factory.verifyBase(new URL(base + "/")));
+		assertEquals(1, checks.get());
+	}
+
+	@Test
+	public void testFailureRememberedBriefly() throws Exception {
+		factory.setFailedVerificationTimeToLive(100);
+		present = false;
+		assertFalse(factory.verifyBase(base));
+		present = true;
+		assertFalse(factory.verifyBase(base));
+		assertEquals(1, checks.get());
+		Thread.sleep(150);
+		assertTrue(factory.verifyBase(base));
+		assertEquals(2, checks.get());
+	}
+}
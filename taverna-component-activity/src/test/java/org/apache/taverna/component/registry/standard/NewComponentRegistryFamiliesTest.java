@@ -0,0 +1,166 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.profile.BaseProfileLocator;
+import org.apache.taverna.component.profile.ComponentProfileImpl;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that the families of a registry are listed from all its profiles,
+ * and that a profile that cannot be listed does not hide the families of the
+ * others, nor is its absence taken as final.
+ */
+public class NewComponentRegistryFamiliesTest {
+	private HttpServer server;
+	private ExecutorService executor;
+	private String base;
+	private volatile boolean firstProfileFails;
+	private volatile boolean secondProfileFails;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		base = "http://localhost:" + server.getAddress().getPort();
+		server.createContext("/component-profiles.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "<component-profiles>"
+						+ profile("1") + profile("2")
+						+ "</component-profiles>");
+			}
+		});
+		server.createContext("/profile.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try (InputStream in = getClass().getClassLoader()
+						.getResourceAsStream("EmptyProfile.xml")) {
+					send(exchange, 200, IOUtils.toString(in, "UTF-8"));
+				}
+			}
+		});
+		server.createContext("/component-families.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String query = exchange.getRequestURI().getQuery();
+				String which = query.contains("/profiles/1") ? "1" : "2";
+				if (which.equals("1") ? firstProfileFails : secondProfileFails)
+					send(exchange, 404, "<error><reason>gone</reason></error>");
+				else
+					send(exchange, 200, "<component-families><pack id='" + which
+							+ "' uri='" + base + "/packs/" + which
+							+ "' resource='" + base + "/packs/" + which
+							+ "'><title>family" + which
+							+ "</title><description>one</description></pack>"
+							+ "</component-families>");
+			}
+		});
+		server.start();
+		executor = newFixedThreadPool(2);
+	}
+
+	private String profile(String id) {
+		return "<file id='" + id + "' uri='" + base + "/files/" + id
+				+ "' resource='" + base + "/profiles/" + id
+				+ "'><content-uri>" + base + "/profile.xml</content-uri></file>";
+	}
+
+	private static void send(HttpExchange exchange, int code, String document)
+			throws IOException {
+		byte[] body = document.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(code, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	@After
+	public void stopServer() {
+		executor.shutdownNow();
+		server.stop(0);
+	}
+
+	private NewComponentRegistry registry() throws Exception {
+		ComponentUtil util = new ComponentUtil();
+		util.setBaseLocator(new BaseProfileLocator() {
+			@Override
+			public synchronized ComponentProfileImpl getProfile() {
+				return null;
+			}
+		});
+		URL url = new URL(base);
+		return new NewComponentRegistry(null, url, util, null, null,
+				new PooledTransport(2, 5000, 5000, 60000), null,
+				Compression.NONE, executor, 2, RetryPolicy.NONE,
+				new CircuitBreaker(base, 0, 0), null);
+	}
+
+	@Test
+	public void testFamiliesFromAllProfiles() throws Exception {
+		NewComponentRegistry registry = registry();
+		assertEquals(2, registry.getComponentFamilies().size());
+		assertNotNull(registry.getComponentFamily("family1"));
+		assertNotNull(registry.getComponentFamily("family2"));
+	}
+
+	@Test
+	public void testFailingProfileReportedAlone() throws Exception {
+		NewComponentRegistry registry = registry();
+		secondProfileFails = true;
+		assertNotNull(registry.getComponentFamily("family1"));
+		assertNull(registry.getComponentFamily("family2"));
+		assertEquals(1, registry.getComponentFamilies().size());
+
+		// The partial listing is not kept once the profile can be listed
+		secondProfileFails = false;
+		assertNotNull(registry.getComponentFamily("family2"));
+		assertEquals(2, registry.getComponentFamilies().size());
+	}
+
+	@Test
+	public void testPartialRefreshKeepsFullListing() throws Exception {
+		NewComponentRegistry registry = registry();
+		assertEquals(2, registry.getComponentFamilies().size());
+		registry.expireMetadata();
+		secondProfileFails = true;
+		assertNotNull(registry.getComponentFamily("family2"));
+		assertEquals(2, registry.getComponentFamilies().size());
+	}
+
+	@Test
+	public void testAllProfilesFailing() throws Exception {
+		NewComponentRegistry registry = registry();
+		firstProfileFails = secondProfileFails = true;
+		try {
+			registry.getComponentFamilies();
+			fail("listing with no profile listed was accepted");
+		} catch (ComponentException e) {
+			// Expected
+		}
+
+		// Nothing was kept, so the next request lists them all
+		firstProfileFails = secondProfileFails = false;
+		assertEquals(2, registry.getComponentFamilies().size());
+	}
+}
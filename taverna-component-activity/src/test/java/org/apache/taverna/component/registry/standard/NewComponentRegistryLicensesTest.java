@@ -0,0 +1,119 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.profile.BaseProfileLocator;
+import org.apache.taverna.component.profile.ComponentProfileImpl;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that a failure to list the licenses of a registry is reported, and
+ * not remembered as there being none.
+ */
+public class NewComponentRegistryLicensesTest {
+	private HttpServer server;
+	private ExecutorService executor;
+	private String base;
+	private volatile boolean licensesFail;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		base = "http://localhost:" + server.getAddress().getPort();
+		server.createContext("/licenses.xml", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (licensesFail)
+					send(exchange, 404, "<error><reason>gone</reason></error>");
+				else
+					send(exchange, 200, "<licenses><license id='1' uri='"
+							+ base + "/licenses/1' resource='" + base
+							+ "/licenses/1'><title>Attribution-NoDerivs</title>"
+							+ "<unique-name>by-nd</unique-name></license>"
+							+ "</licenses>");
+			}
+		});
+		server.start();
+		executor = newFixedThreadPool(2);
+	}
+
+	private static void send(HttpExchange exchange, int code, String document)
+			throws IOException {
+		byte[] body = document.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(code, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	@After
+	public void stopServer() {
+		executor.shutdownNow();
+		server.stop(0);
+	}
+
+	private NewComponentRegistry registry() throws Exception {
+		ComponentUtil util = new ComponentUtil();
+		util.setBaseLocator(new BaseProfileLocator() {
+			@Override
+			public synchronized ComponentProfileImpl getProfile() {
+				return null;
+			}
+		});
+		return new NewComponentRegistry(null, new URL(base), util, null, null,
+				new PooledTransport(2, 5000, 5000, 60000), null,
+				Compression.NONE, executor, 2, RetryPolicy.NONE,
+				new CircuitBreaker(base, 0, 0), null);
+	}
+
+	@Test
+	public void testLicensesListed() throws Exception {
+		NewComponentRegistry registry = registry();
+		assertEquals(1, registry.getLicenses().size());
+		assertEquals("by-nd", registry.getPreferredLicense().getAbbreviation());
+	}
+
+	@Test
+	public void testLicenseByName() throws Exception {
+		NewComponentRegistry registry = registry();
+		assertSame(registry.getPreferredLicense(), registry.getLicense("by-nd"));
+		assertNull(registry.getLicense("by-sa"));
+		assertNull(registry.getLicense(null));
+	}
+
+	@Test
+	public void testFailedListingNotKept() throws Exception {
+		NewComponentRegistry registry = registry();
+		licensesFail = true;
+		try {
+			registry.getPreferredLicense();
+			fail("licenses listed when the registry could not be asked");
+		} catch (ComponentException e) {
+			// Expected
+		}
+
+		// Nothing was recorded, so the next request asks again
+		licensesFail = false;
+		assertEquals("by-nd", registry.getPreferredLicense().getAbbreviation());
+		assertEquals(1, registry.getLicenses().size());
+	}
+}
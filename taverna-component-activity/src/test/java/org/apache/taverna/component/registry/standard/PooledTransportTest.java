@@ -0,0 +1,233 @@
+package org.apache.taverna.component.registry.standard;
+
+import static java.util.Collections.newSetFromMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the pooled transport against a stub server: that it bounds the
+ * connections to each host, applies its timeouts, forgets idle hosts, and
+ * lets released connections be reused.
+ */
+public class PooledTransportTest {
+	private static final byte[] BODY = new byte[10000];
+
+	private HttpServer server;
+	private String base;
+	/** The client ends of the sockets that the server has seen. */
+	private final Set<InetSocketAddress> sockets = newSetFromMap(
+			new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/body", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				sockets.add(exchange.getRemoteAddress());
+				exchange.sendResponseHeaders(200, BODY.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(BODY);
+				}
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		base = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	/** Make a request, reading only the start of the response. */
+	private static HttpURLConnection request(Transport transport, String url)
+			throws IOException {
+		HttpURLConnection conn = transport.open("GET", url);
+		InputStream in = conn.getInputStream();
+		in.read();
+		return conn;
+	}
+
+	@Test
+	public void testConnectionsPerHostBounded() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 200, 5000, 60000);
+		HttpURLConnection conn = transport.open("GET", base + "/body");
+		try {
+			transport.open("GET", base + "/body");
+			fail("second connection to a host allowed");
+		} catch (ConnectionPoolTimeoutException e) {
+			// Expected
+		}
+		// Another host is not held up
+		String other = "http://127.0.0.1:" + server.getAddress().getPort();
+		transport.release(transport.open("GET", other + "/body"));
+
+		transport.release(conn);
+		transport.release(transport.open("GET", base + "/body"));
+	}
+
+	@Test
+	public void testDiscardGivesConnectionBack() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 200, 5000, 60000);
+		transport.discard(request(transport, base + "/body"));
+		transport.discard(request(transport, base + "/body"));
+	}
+
+	@Test
+	public void testTimeoutsApplied() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 1234, 100, 60000);
+		HttpURLConnection conn = transport.open("GET", base + "/slow");
+		assertEquals(1234, conn.getConnectTimeout());
+		assertEquals(100, conn.getReadTimeout());
+		try {
+			conn.getResponseCode();
+			fail("read did not time out");
+		} catch (SocketTimeoutException e) {
+			// Expected
+		} finally {
+			transport.discard(conn);
+		}
+	}
+
+	@Test
+	public void testIdleHostsForgotten() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 200, 5000, 50);
+		transport.release(request(transport, base + "/body"));
+		assertEquals(1, transport.getHostCount());
+		Thread.sleep(100);
+		String other = "http://127.0.0.1:" + server.getAddress().getPort();
+		transport.release(request(transport, other + "/body"));
+		assertEquals(1, transport.getHostCount());
+	}
+
+	@Test
+	public void testBusyHostsKept() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 200, 5000, 50);
+		HttpURLConnection conn = request(transport, base + "/body");
+		Thread.sleep(100);
+		String other = "http://127.0.0.1:" + server.getAddress().getPort();
+		transport.release(request(transport, other + "/body"));
+		assertEquals(2, transport.getHostCount());
+		transport.release(conn);
+	}
+
+	@Test
+	public void testReleasedConnectionsReused() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 5000, 5000, 60000);
+		for (int i = 0; i < 3; i++)
+			// Only partly read; releasing must drain the rest
+			transport.release(request(transport, base + "/body"));
+		assertEquals(1, sockets.size());
+	}
+
+	@Test
+	public void testDiscardedConnectionsNotReused() throws Exception {
+		PooledTransport transport = new PooledTransport(1, 5000, 5000, 60000);
+		for (int i = 0; i < 3; i++)
+			transport.discard(request(transport, base + "/body"));
+		assertEquals(3, sockets.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMustAllowAConnection() {
+		new PooledTransport(0, 0, 0, 0);
+	}
+
+	@Test
+	public void testConnectionLeaseWaits() throws Exception {
+		final PooledTransport transport = new PooledTransport(1, 5000, 5000,
+				60000);
+		final HttpURLConnection conn = request(transport, base + "/body");
+		Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				transport.release(conn);
+			}
+		};
+		releaser.start();
+		long t0 = System.currentTimeMillis();
+		transport.release(request(transport, base + "/body"));
+		assertTrue(System.currentTimeMillis() - t0 >= 50);
+		releaser.join();
+	}
+
+	@Test
+	public void testLimitHeldWhileHostsForgotten() throws Exception {
+		// Forget every host that is not in use, as often as possible
+		final PooledTransport transport = new PooledTransport(1, 5000, 5000,
+				-1000);
+		final String[] hosts = { base,
+				"http://127.0.0.1:" + server.getAddress().getPort() };
+		final AtomicInteger[] inUse = { new AtomicInteger(),
+				new AtomicInteger() };
+		final AtomicInteger mostInUse = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = first; i < first + 2000; i++) {
+						int h = i % 2;
+						try {
+							// Never connected, so cheap to open and discard
+							HttpURLConnection conn = transport.open("GET",
+									hosts[h] + "/body");
+							int n = inUse[h].incrementAndGet();
+							if (n > mostInUse.get())
+								mostInUse.set(n);
+							Thread.yield();
+							inUse[h].decrementAndGet();
+							transport.discard(conn);
+						} catch (IOException e) {
+							mostInUse.set(-1);
+							return;
+						}
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		assertEquals(1, mostInUse.get());
+	}
+}
@@ -0,0 +1,176 @@
+package org.apache.taverna.component.utils;
+
+import static org.apache.taverna.component.TestSupport.runTogether;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskCacheTest {
+	private File dir;
+
+	@Before
+	public void makeDirectory() throws IOException {
+		dir = Files.createTempDirectory("diskcache").toFile();
+	}
+
+	@After
+	public void removeDirectory() {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DiskCache cache = new DiskCache(dir, 10000);
+		byte[] data = "hello, world".getBytes("UTF-8");
+		assertNull(cache.get("a"));
+		cache.put("a", data);
+		assertArrayEquals(data, cache.get("a"));
+		// A new instance (as after a restart) sees the same entries
+		assertArrayEquals(data, new DiskCache(dir, 10000).get("a"));
+	}
+
+	@Test
+	public void testReplace() throws IOException {
+		DiskCache cache = new DiskCache(dir, 10000);
+		cache.put("a", new byte[100]);
+		cache.put("a", new byte[10]);
+		assertEquals(10, cache.get("a").length);
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testDamagedEntryDiscarded() throws IOException {
+		DiskCache cache = new DiskCache(dir, 10000);
+		cache.put("a", new byte[100]);
+		File entry = dir.listFiles()[0];
+		try (RandomAccessFile raf = new RandomAccessFile(entry, "rw")) {
+			raf.seek(raf.length() - 1);
+			raf.write(1);
+		}
+		assertNull(cache.get("a"));
+		assertTrue(!entry.exists());
+	}
+
+	private void damageLength(int length) throws IOException {
+		File entry = dir.listFiles()[0];
+		try (RandomAccessFile raf = new RandomAccessFile(entry, "rw")) {
+			// The length comes just before the data
+			raf.seek(raf.length() - 100 - 4);
+			raf.writeInt(length);
+		}
+	}
+
+	@Test
+	public void testNegativeLengthDiscarded() throws IOException {
+		DiskCache cache = new DiskCache(dir, 10000);
+		cache.put("a", new byte[100]);
+		damageLength(-1);
+		assertNull(cache.get("a"));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void testHugeLengthDiscarded() throws IOException {
+		DiskCache cache = new DiskCache(dir, 10000);
+		cache.put("a", new byte[100]);
+		damageLength(Integer.MAX_VALUE);
+		assertNull(cache.get("a"));
+		assertEquals(0, dir.listFiles().length);
+		// A fresh entry can be stored in its place
+		cache.put("a", new byte[10]);
+		assertEquals(10, cache.get("a").length);
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		DiskCache cache = new DiskCache(dir, 2500);
+		cache.put("a", new byte[1000]);
+		cache.put("b", new byte[1000]);
+		long now = System.currentTimeMillis();
+		for (File f : dir.listFiles())
+			f.setLastModified(now - 100000);
+		assertNotNull(cache.get("a"));
+		cache.put("c", new byte[1000]);
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertTrue(cache.getSize() <= 2500);
+	}
+
+	@Test
+	public void testReplacementNotDiscarded() throws Exception {
+		final DiskCache cache = new DiskCache(dir, 100000);
+		final byte[] good = new byte[1000];
+		cache.put("a", good);
+		final File entry = dir.listFiles()[0];
+		final byte[] junk = new byte[1000];
+		final AtomicBoolean done = new AtomicBoolean();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					for (int i = 0; i < 2000; i++) {
+						// Damage the entry, then replace it with a good one
+						File damaged = new File(dir, "damaged");
+						Files.write(damaged.toPath(), junk);
+						assertTrue(damaged.renameTo(entry));
+						cache.put("a", good);
+						// No reader may now decide the new entry is damaged
+						assertTrue(entry.isFile());
+					}
+				} finally {
+					done.set(true);
+				}
+				return null;
+			}
+		});
+		for (int t = 0; t < 2; t++)
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					while (!done.get())
+						cache.get("a");
+					return null;
+				}
+			});
+		runTogether(tasks);
+		assertArrayEquals(good, cache.get("a"));
+	}
+
+	@Test
+	public void testAbandonedTemporariesSwept() throws IOException {
+		File abandoned = new File(dir, "entry1.tmp");
+		File recent = new File(dir, "entry2.tmp");
+		Files.write(abandoned.toPath(), new byte[100]);
+		Files.write(recent.toPath(), new byte[100]);
+		abandoned.setLastModified(System.currentTimeMillis() - 24 * 60 * 60
+				* 1000);
+		DiskCache cache = new DiskCache(dir, 10000);
+		cache.put("a", new byte[10]);
+		assertFalse(abandoned.exists());
+		// Might still be being written by another instance
+		assertTrue(recent.exists());
+		assertEquals(10, cache.get("a").length);
+	}
+}
@@ -0,0 +1,71 @@
+package org.apache.taverna.component.utils;
+
+import static org.apache.taverna.component.utils.JAXBUtils.getMarshaller;
+import static org.apache.taverna.component.utils.JAXBUtils.getUnmarshaller;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JAXBUtilsTest {
+	@XmlRootElement(name = "item")
+	public static class Item {
+		public String name;
+	}
+
+	private static final String DOC = "<item><name>abc</name></item>";
+	private static JAXBContext context;
+
+	@BeforeClass
+	public static void makeContext() throws Exception {
+		context = JAXBContext.newInstance(Item.class);
+	}
+
+	@Test
+	public void testReusedWithinThread() throws Exception {
+		assertSame(getUnmarshaller(context), getUnmarshaller(context));
+		assertSame(getMarshaller(context), getMarshaller(context));
+	}
+
+	@Test
+	public void testNotSharedBetweenThreads() throws Exception {
+		final AtomicReference<Unmarshaller> other = new AtomicReference<>();
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					other.set(getUnmarshaller(context));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		t.start();
+		t.join();
+		assertNotSame(getUnmarshaller(context), other.get());
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Item item = getUnmarshaller(context).unmarshal(
+				new StreamSource(new StringReader(DOC)), Item.class)
+				.getValue();
+		assertEquals("abc", item.name);
+		StringWriter sw = new StringWriter();
+		getMarshaller(context).marshal(item, sw);
+		assertEquals(item.name, getUnmarshaller(context)
+				.unmarshal(new StreamSource(new StringReader(sw.toString())),
+						Item.class).getValue().name);
+	}
+}
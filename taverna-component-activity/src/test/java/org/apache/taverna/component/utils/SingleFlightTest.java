@@ -0,0 +1,214 @@
+package org.apache.taverna.component.utils;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+	private static final int THREADS = 8;
+
+	@Test
+	public void testConcurrentCallsCoalesce() throws Exception {
+		final SingleFlight<String, Object> flight = new SingleFlight<>();
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> slow = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				runs.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new Object();
+			}
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			Future<Object> first = pool.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return flight.execute("k", slow);
+				}
+			});
+			started.await();
+			Future<?>[] others = new Future<?>[THREADS - 1];
+			for (int i = 0; i < others.length; i++)
+				others[i] = pool.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return flight.execute("k", slow);
+					}
+				});
+			while (flight.getCoalescedCount() < THREADS - 1)
+				Thread.sleep(10);
+			release.countDown();
+			for (Future<?> f : others)
+				assertSame(first.get(), f.get());
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertEquals(1, runs.get());
+		assertEquals(THREADS - 1, flight.getCoalescedCount());
+	}
+
+	@Test
+	public void testSequentialCallsRunAgain() throws Exception {
+		SingleFlight<String, Integer> flight = new SingleFlight<>();
+		final AtomicInteger runs = new AtomicInteger();
+		Callable<Integer> op = new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return runs.incrementAndGet();
+			}
+		};
+		assertEquals(1, (int) flight.execute("k", op));
+		assertEquals(2, (int) flight.execute("k", op));
+		assertEquals(0, flight.getCoalescedCount());
+	}
+
+	@Test(expected = IOException.class)
+	public void testFailurePropagates() throws Exception {
+		new SingleFlight<String, Object>().execute("k",
+				new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						throw new IOException("boom");
+					}
+				});
+	}
+
+	/** A single operation that should never run. */
+	private static Callable<String> unexpected(final String key) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				fail("ran a single operation for " + key + " during the batch");
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void testBatchSharedWithSingleCalls() throws Exception {
+		final SingleFlight<String, String> flight = new SingleFlight<>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			Future<Map<String, String>> batch = pool
+					.submit(new Callable<Map<String, String>>() {
+						@Override
+						public Map<String, String> call() throws Exception {
+							return flight.executeAll(asList("a", "b", "a"),
+									new SingleFlight.Batch<String, String>() {
+										@Override
+										public Map<String, String> call(
+												Set<String> keys,
+												Map<String, Exception> failures)
+												throws Exception {
+											assertEquals(2, keys.size());
+											started.countDown();
+											release.await();
+											failures.put("b", new IOException(
+													"no b"));
+											Map<String, String> results = new HashMap<>();
+											results.put("a", "batch a");
+											return results;
+										}
+									});
+						}
+					});
+			started.await();
+			Future<String> a = pool.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flight.execute("a", unexpected("a"));
+				}
+			});
+			Future<String> b = pool.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flight.execute("b", unexpected("b"));
+				}
+			});
+			while (flight.getCoalescedCount() < 2)
+				Thread.sleep(10);
+			release.countDown();
+
+			assertEquals(1, batch.get().size());
+			assertEquals("batch a", batch.get().get("a"));
+			assertEquals("batch a", a.get());
+			try {
+				b.get();
+				fail("did not share the batch's failure");
+			} catch (ExecutionException e) {
+				assertEquals("no b", e.getCause().getMessage());
+			}
+		} finally {
+			release.countDown();
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testBatchLeavesOutKeysInFlight() throws Exception {
+		final SingleFlight<String, String> flight = new SingleFlight<>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> single = pool.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flight.execute("a", new Callable<String>() {
+						@Override
+						public String call() throws Exception {
+							started.countDown();
+							release.await();
+							return "single a";
+						}
+					});
+				}
+			});
+			started.await();
+			Map<String, String> results = flight.executeAll(
+					asList("a", "b"), new SingleFlight.Batch<String, String>() {
+						@Override
+						public Map<String, String> call(Set<String> keys,
+								Map<String, Exception> failures) {
+							assertEquals(1, keys.size());
+							Map<String, String> results = new HashMap<>();
+							for (String key : keys)
+								results.put(key, "batch " + key);
+							return results;
+						}
+					});
+			assertEquals(1, results.size());
+			assertEquals("batch b", results.get("b"));
+			release.countDown();
+			assertEquals("single a", single.get());
+		} finally {
+			release.countDown();
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}
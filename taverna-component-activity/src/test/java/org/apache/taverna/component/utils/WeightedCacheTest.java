@@ -0,0 +1,68 @@
+package org.apache.taverna.component.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class WeightedCacheTest {
+	private static final WeightedCache.Weigher<String> LENGTH = new WeightedCache.Weigher<String>() {
+		@Override
+		public long weigh(String value) {
+			return value.length();
+		}
+	};
+
+	@Test
+	public void testHitsAndMisses() {
+		WeightedCache<String, String> cache = new WeightedCache<>(100, LENGTH);
+		assertNull(cache.get("a"));
+		cache.put("a", "aaa", 60000);
+		assertEquals("aaa", cache.get("a"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(3, cache.getWeight());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsedByWeight() {
+		WeightedCache<String, String> cache = new WeightedCache<>(10, LENGTH);
+		cache.put("a", "aaaa", 60000);
+		cache.put("b", "bbbb", 60000);
+		cache.get("a");
+		cache.put("c", "cccc", 60000);
+		assertEquals("aaaa", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("cccc", cache.get("c"));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(8, cache.getWeight());
+	}
+
+	@Test
+	public void testOverweightNotStored() {
+		WeightedCache<String, String> cache = new WeightedCache<>(10, LENGTH);
+		cache.put("a", "aaaa", 60000);
+		cache.put("b", "bbbbbbbbbbbb", 60000);
+		assertNull(cache.get("b"));
+		assertEquals("aaaa", cache.get("a"));
+	}
+
+	@Test
+	public void testExpiredServedOnlyAsStale() {
+		WeightedCache<String, String> cache = new WeightedCache<>(10, LENGTH);
+		cache.put("a", "aaaa", -1);
+		assertNull(cache.get("a"));
+		assertEquals("aaaa", cache.getStale("a"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testReplaceAdjustsWeight() {
+		WeightedCache<String, String> cache = new WeightedCache<>(10, LENGTH);
+		cache.put("a", "aaaa", 60000);
+		cache.put("a", "aa", 60000);
+		assertEquals(2, cache.getWeight());
+		cache.remove("a");
+		assertEquals(0, cache.getWeight());
+	}
+}
@@ -0,0 +1,144 @@
+package org.apache.taverna.component;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.apache.taverna.component.registry.ComponentVersion;
+import org.apache.taverna.component.registry.ComponentVersionIdentification;
+import org.apache.taverna.component.utils.SystemUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+
+/**
+ * The cost of realizing one component version for many activities, by
+ * compiling it for each of them (as before the compiled dataflow cache) and
+ * by sharing one compilation through the cache. Run with <tt>-prof gc</tt> to
+ * see the memory allocated as well as the time taken.
+ *
+ * @author Donal Fellows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompiledDataflowCacheBenchmark {
+	/** Stands in for the memory held by one compiled dataflow. */
+	private static final int DATAFLOW_SIZE = 1024 * 1024;
+	/** Stands in for the time taken by one compilation. */
+	private static final long COMPILE_TIME = 20;
+
+	@Param({ "1", "30" })
+	public int activities;
+
+	private SystemUtils system;
+	private CompiledDataflowCache cache;
+	private Version.ID id;
+	private WorkflowBundle bundle;
+
+	private static Dataflow fakeDataflow(int size) {
+		final byte[] payload = new byte[size];
+		return (Dataflow) Proxy.newProxyInstance(
+				Dataflow.class.getClassLoader(),
+				new Class<?>[] { Dataflow.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						if (method.getName().equals("toString"))
+							return "fake dataflow of " + payload.length
+									+ " bytes";
+						if (method.getReturnType() == Set.class)
+							return Collections.emptySet();
+						if (method.getReturnType() == List.class)
+							return Collections.emptyList();
+						return null;
+					}
+				});
+	}
+
+	@Setup
+	public void makeCache() throws Exception {
+		id = new ComponentVersionIdentification(new URL(
+				"http://example.com/registry"), "family", "component", 1);
+		bundle = new WorkflowBundle();
+		system = new SystemUtils() {
+			@Override
+			public Dataflow compile(WorkflowBundle implementation) {
+				try {
+					Thread.sleep(COMPILE_TIME);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return fakeDataflow(DATAFLOW_SIZE);
+			}
+		};
+		cache = new CompiledDataflowCache();
+		cache.setSystemUtil(system);
+		cache.setComponentUtil(new ComponentUtil() {
+			@Override
+			public Version getVersion(Version.ID ident) {
+				return new ComponentVersion(null) {
+					@Override
+					protected Integer internalGetVersionNumber() {
+						return 1;
+					}
+
+					@Override
+					protected String internalGetDescription() {
+						return "";
+					}
+
+					@Override
+					protected WorkflowBundle internalGetImplementation() {
+						return bundle;
+					}
+
+					@Override
+					public URL getHelpURL() {
+						return null;
+					}
+				};
+			}
+		});
+	}
+
+	@Benchmark
+	public List<Dataflow> compileEach() throws Exception {
+		List<Dataflow> held = new ArrayList<>();
+		for (int i = 0; i < activities; i++)
+			held.add(system.compile(bundle));
+		return held;
+	}
+
+	@Benchmark
+	public List<Dataflow> shared() throws Exception {
+		List<Dataflow> held = new ArrayList<>();
+		for (int i = 0; i < activities; i++)
+			held.add(cache.acquire(id));
+		// Let go, so the next invocation compiles afresh
+		for (int i = 0; i < activities; i++)
+			cache.release(id);
+		return held;
+	}
+}
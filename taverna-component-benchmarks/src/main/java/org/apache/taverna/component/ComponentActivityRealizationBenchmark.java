@@ -0,0 +1,125 @@
+package org.apache.taverna.component;
+
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.COMPONENT_NAME;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.COMPONENT_VERSION;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.FAMILY_NAME;
+import static org.apache.taverna.component.api.config.ComponentPropertyNames.REGISTRY_BASE;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.taverna.t2.activities.dataflow.DataflowActivity;
+import net.sf.taverna.t2.workflowmodel.Dataflow;
+
+import org.apache.taverna.component.api.ComponentException;
+import org.apache.taverna.component.api.Family;
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.registry.ComponentImplementationCache;
+import org.apache.taverna.component.registry.ComponentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import uk.org.taverna.scufl2.api.container.WorkflowBundle;
+import uk.org.taverna.scufl2.api.core.Workflow;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * How many realization lookups per millisecond one activity serves as the
+ * number of invocation threads grows. With no lock on the path, the total
+ * should rise with the thread count, up to the number of cores.
+ *
+ * @author Donal Fellows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ComponentActivityRealizationBenchmark {
+	private ComponentActivity activity;
+
+	private static Dataflow fakeDataflow() {
+		return (Dataflow) Proxy.newProxyInstance(
+				Dataflow.class.getClassLoader(),
+				new Class<?>[] { Dataflow.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						if (method.getReturnType() == Set.class)
+							return Collections.emptySet();
+						if (method.getReturnType() == List.class)
+							return Collections.emptyList();
+						return null;
+					}
+				});
+	}
+
+	@Setup
+	public void realize() throws Exception {
+		ComponentUtil util = new ComponentUtil() {
+			@Override
+			public Family getFamily(URL registryBase, String familyName)
+					throws ComponentException {
+				throw new ComponentException("no profile in this benchmark");
+			}
+		};
+		ComponentImplementationCache cache = new ComponentImplementationCache() {
+			@Override
+			public WorkflowBundle getImplementation(Version.ID id) {
+				WorkflowBundle bundle = new WorkflowBundle();
+				bundle.setMainWorkflow(new Workflow());
+				return bundle;
+			}
+		};
+		CompiledDataflowCache compiled = new CompiledDataflowCache() {
+			@Override
+			public Dataflow acquire(Version.ID id) {
+				return fakeDataflow();
+			}
+		};
+		activity = new ComponentActivity(util, cache, compiled, null, null,
+				null, new ComponentExceptionFactory());
+		ObjectNode json = JsonNodeFactory.instance.objectNode();
+		json.put(REGISTRY_BASE, "http://example.com/registry");
+		json.put(FAMILY_NAME, "family");
+		json.put(COMPONENT_NAME, "component");
+		json.put(COMPONENT_VERSION, 1);
+		activity.configure(json);
+		// Only the steady state is measured
+		activity.getComponentRealization();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public DataflowActivity lookup1Thread() throws Exception {
+		return activity.getComponentRealization();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public DataflowActivity lookup4Threads() throws Exception {
+		return activity.getComponentRealization();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public DataflowActivity lookup16Threads() throws Exception {
+		return activity.getComponentRealization();
+	}
+}
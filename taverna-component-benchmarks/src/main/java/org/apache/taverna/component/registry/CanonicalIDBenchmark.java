@@ -0,0 +1,79 @@
+package org.apache.taverna.component.registry;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.taverna.component.api.Version;
+import org.apache.taverna.component.api.Version.CanonicalID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The cost of looking up a component version in a map, keyed by the
+ * identifiers that activities carry and by canonical identifiers, for a
+ * registry whose host cannot be resolved.
+ *
+ * @author Donal Fellows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CanonicalIDBenchmark {
+	/** Never resolves (RFC 2606), standing in for an unreachable DNS. */
+	private static final String UNRESOLVABLE = "http://registry.invalid/";
+	private static final int IDS = 100;
+
+	private URL base;
+	private final Map<Version.ID, Integer> plain = new HashMap<>();
+	private final Map<Version.ID, Integer> canonical = new HashMap<>();
+	private final Version.ID[] beans = new Version.ID[IDS];
+	private int next;
+
+	@Setup
+	public void fillMaps() throws MalformedURLException {
+		base = new URL(UNRESOLVABLE);
+		for (int i = 0; i < IDS; i++) {
+			plain.put(new Version.Identifier(base, "family", "c" + i, 1), i);
+			canonical.put(CanonicalID.of(base, "family", "c" + i, 1), i);
+			beans[i] = new ComponentVersionIdentification(base, "family", "c"
+					+ i, 1);
+		}
+	}
+
+	private Version.ID nextBean() {
+		next = (next + 1) % IDS;
+		return beans[next];
+	}
+
+	/** Keyed by the activity's own identifier. */
+	@Benchmark
+	public Integer plainLookup() {
+		return plain.get(nextBean());
+	}
+
+	/** Keyed by the canonical form of the activity's identifier. */
+	@Benchmark
+	public Integer canonicalLookup() {
+		return canonical.get(CanonicalID.of(nextBean()));
+	}
+
+	/**
+	 * The first use of a newly made identifier, as for each newly configured
+	 * activity; before identifiers hashed the string form of their registry
+	 * this looked up the registry's host.
+	 */
+	@Benchmark
+	public void firstHash(Blackhole bh) throws MalformedURLException {
+		bh.consume(new ComponentVersionIdentification(new URL(UNRESOLVABLE),
+				"family", "c" + (next++ % IDS), 1).hashCode());
+	}
+}
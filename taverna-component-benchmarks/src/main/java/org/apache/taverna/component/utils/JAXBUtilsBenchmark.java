@@ -0,0 +1,58 @@
+package org.apache.taverna.component.utils;
+
+import static org.apache.taverna.component.utils.JAXBUtils.getUnmarshaller;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.transform.stream.StreamSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The per-request cost of unmarshalling a small registry response with a
+ * fresh unmarshaller, as the client used to, against reusing the per-thread
+ * one.
+ *
+ * @author Donal Fellows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JAXBUtilsBenchmark {
+	@XmlRootElement(name = "item")
+	public static class Item {
+		public String name;
+	}
+
+	private static final String DOC = "<item><name>abc</name></item>";
+	private JAXBContext context;
+
+	@Setup
+	public void makeContext() throws JAXBException {
+		context = JAXBContext.newInstance(Item.class);
+	}
+
+	@Benchmark
+	public Item fresh() throws JAXBException {
+		return context.createUnmarshaller()
+				.unmarshal(new StreamSource(new StringReader(DOC)), Item.class)
+				.getValue();
+	}
+
+	@Benchmark
+	public Item reused() throws JAXBException {
+		return getUnmarshaller(context)
+				.unmarshal(new StreamSource(new StringReader(DOC)), Item.class)
+				.getValue();
+	}
+}
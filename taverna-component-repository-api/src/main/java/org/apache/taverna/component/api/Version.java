@@ -2,6 +2,8 @@ package org.apache.taverna.component.api;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import uk.org.taverna.scufl2.api.container.WorkflowBundle;
 
@@ -124,7 +126,9 @@ public interface Version {
 			result *= prime;
 			result += (familyName == null) ? 0 : familyName.hashCode();
 			result *= prime;
-			result += (registryBase == null) ? 0 : registryBase.hashCode();
+			// NB: Hash the string form of the URL, as equality uses it
+			result += (registryBase == null) ? 0 : registryBase.toString()
+					.hashCode();
 			return result;
 		}
 
@@ -203,4 +207,171 @@ public interface Version {
 					.getRegistryBase(), c.getFamily().getName(), c.getName(), 0));
 		}
 	}
+
+	/**
+	 * The canonical form of a version identifier, for use as a key in maps
+	 * that are consulted often. The registry base is held as a normalized
+	 * string (its external form, without any trailing slash) and the hash
+	 * code is worked out once, so neither hashing nor comparing ever goes to
+	 * {@link URL#hashCode()} or {@link URL#equals(Object)}, which may look up
+	 * the host in the DNS. Instances are interned by {@link #of(ID)} without
+	 * locking, so two canonical identifiers for the same version are normally
+	 * the same object and compare by identity. The interned identifiers are
+	 * kept for the life of the JVM; there is one for each component version
+	 * that has been used, of which there are few.
+	 * <p>
+	 * A canonical identifier is only equal to other canonical identifiers;
+	 * convert other identifiers with {@link #of(ID)} before comparing them.
+	 */
+	final class CanonicalID implements ID {
+		private static final long serialVersionUID = -3546398734871298373L;
+		private static final ConcurrentMap<CanonicalID, CanonicalID> interned = new ConcurrentHashMap<>();
+
+		private final URL registryBase;
+		private final String registry;
+		private final String familyName;
+		private final String componentName;
+		private final Integer componentVersion;
+		private final int hash;
+
+		private CanonicalID(URL registryBase, String familyName,
+				String componentName, Integer componentVersion) {
+			this.registryBase = registryBase;
+			this.registry = normalize(registryBase);
+			this.familyName = familyName;
+			this.componentName = componentName;
+			this.componentVersion = componentVersion;
+			final int prime = 31;
+			int result = 1;
+			result *= prime;
+			result += (componentName == null) ? 0 : componentName.hashCode();
+			result *= prime;
+			result += (componentVersion == null) ? 0 : componentVersion
+					.hashCode();
+			result *= prime;
+			result += (familyName == null) ? 0 : familyName.hashCode();
+			result *= prime;
+			result += (registry == null) ? 0 : registry.hashCode();
+			this.hash = result;
+		}
+
+		private static String normalize(URL registryBase) {
+			if (registryBase == null)
+				return null;
+			String registry = registryBase.toExternalForm();
+			while (registry.endsWith("/"))
+				registry = registry.substring(0, registry.length() - 1);
+			return registry;
+		}
+
+		private static CanonicalID intern(CanonicalID candidate) {
+			// Look first, as that never locks
+			CanonicalID existing = interned.get(candidate);
+			if (existing == null) {
+				existing = interned.putIfAbsent(candidate, candidate);
+				if (existing == null)
+					existing = candidate;
+			}
+			return existing;
+		}
+
+		/**
+		 * Get the canonical identifier for a component version.
+		 * 
+		 * @return The shared instance for that version.
+		 */
+		public static CanonicalID of(URL registryBase, String familyName,
+				String componentName, Integer componentVersion) {
+			return intern(new CanonicalID(registryBase, familyName,
+					componentName, componentVersion));
+		}
+
+		/**
+		 * Get the canonical identifier for the version referred to by an
+		 * identifier. Canonical identifiers are returned unchanged.
+		 * 
+		 * @return The shared instance for that version, or <tt>null</tt> if
+		 *         given <tt>null</tt>.
+		 */
+		public static CanonicalID of(ID id) {
+			if (id == null || id instanceof CanonicalID)
+				return (CanonicalID) id;
+			return of(id.getRegistryBase(), id.getFamilyName(),
+					id.getComponentName(), id.getComponentVersion());
+		}
+
+		private Object readResolve() {
+			return intern(this);
+		}
+
+		@Override
+		public URL getRegistryBase() {
+			return registryBase;
+		}
+
+		@Override
+		public String getFamilyName() {
+			return familyName;
+		}
+
+		@Override
+		public String getComponentName() {
+			return componentName;
+		}
+
+		@Override
+		public Integer getComponentVersion() {
+			return componentVersion;
+		}
+
+		private static boolean same(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CanonicalID))
+				return false;
+			// Only reached when not interned, such as while interning
+			CanonicalID other = (CanonicalID) obj;
+			return hash == other.hash
+					&& same(componentVersion, other.componentVersion)
+					&& same(componentName, other.componentName)
+					&& same(familyName, other.familyName)
+					&& same(registry, other.registry);
+		}
+
+		@Override
+		public String toString() {
+			return componentName + " V. " + componentVersion + " in family "
+					+ familyName + " on " + registry;
+		}
+
+		@Override
+		public boolean mostlyEqualTo(ID id) {
+			if (this == id)
+				return true;
+			if (id == null)
+				return false;
+			CanonicalID other = of(id);
+			return same(componentName, other.componentName)
+					&& same(familyName, other.familyName)
+					&& same(registry, other.registry);
+		}
+
+		@Override
+		public boolean mostlyEqualTo(Component c) {
+			return same(componentName, c.getName())
+					&& same(familyName, c.getFamily().getName())
+					&& same(registry, normalize(c.getRegistry()
+							.getRegistryBase()));
+		}
+	}
 }
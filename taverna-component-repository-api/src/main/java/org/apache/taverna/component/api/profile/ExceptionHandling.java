@@ -3,16 +3,48 @@
  */
 package org.apache.taverna.component.api.profile;
 
+import static java.util.Collections.synchronizedMap;
+import static java.util.regex.Pattern.DOTALL;
+import static java.util.regex.Pattern.compile;
+
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * @author alanrw
  * 
  */
 public class ExceptionHandling {
+	/** How many exception messages to remember the handler of. */
+	private static final int DECISION_CACHE_SIZE = 1024;
+	private static final Integer NO_HANDLER = -1;
+	/** Back-references would be renumbered by combining patterns. */
+	private static final Pattern BACK_REFERENCE = compile("\\\\(?:[1-9]|k<)");
+
 	private final boolean failLists;
 	private final List<HandleException> remapped = new ArrayList<HandleException>();
+	/**
+	 * All the patterns in one, in reverse order so that the first alternative
+	 * that matches is the last handler that does; <tt>null</tt> if they cannot
+	 * be combined.
+	 */
+	private final Pattern combined;
+	/** Which capturing group of {@link #combined} stands for each handler. */
+	private final int[] groups;
+	private final Map<String, Integer> decisions = synchronizedMap(new LinkedHashMap<String, Integer>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > DECISION_CACHE_SIZE;
+		}
+	});
 
 	public ExceptionHandling(
 			org.apache.taverna.component.api.profile.doc.ExceptionHandling proxied) {
@@ -20,6 +52,37 @@ public class ExceptionHandling {
 				.getHandleException())
 			remapped.add(new HandleException(he));
 		this.failLists = proxied.getFailLists() != null;
+
+		groups = new int[remapped.size()];
+		StringBuilder sb = new StringBuilder();
+		int group = 1;
+		boolean combinable = true;
+		for (int i = remapped.size() - 1; i >= 0; i--) {
+			Pattern p = remapped.get(i).getPattern();
+			if (BACK_REFERENCE.matcher(p.pattern()).find())
+				combinable = false;
+			if (sb.length() > 0)
+				sb.append('|');
+			sb.append('(').append(p.pattern()).append(')');
+			groups[i] = group;
+			group += 1 + p.matcher("").groupCount();
+		}
+		combined = combinable ? combine(sb.toString()) : null;
+	}
+
+	/**
+	 * Compile the combined pattern. Patterns that are fine alone can clash
+	 * when joined, for example by defining the same named group, or by a
+	 * <tt>(?x)</tt> comment running into the next alternative.
+	 * 
+	 * @return The pattern, or <tt>null</tt> if they cannot be combined.
+	 */
+	private static Pattern combine(String regex) {
+		try {
+			return compile(regex, DOTALL);
+		} catch (PatternSyntaxException e) {
+			return null;
+		}
 	}
 
 	public boolean failLists() {
@@ -29,4 +92,39 @@ public class ExceptionHandling {
 	public List<HandleException> getHandleExceptions() {
 		return remapped;
 	}
+
+	/**
+	 * Find how to handle an exception. Where several handlers match the
+	 * message, the last one listed is used.
+	 * 
+	 * @param exceptionMessage
+	 *            The message of the exception.
+	 * @return The handler, or <tt>null</tt> if none matches.
+	 */
+	public HandleException findHandler(String exceptionMessage) {
+		if (exceptionMessage == null || remapped.isEmpty())
+			return null;
+		Integer decision = decisions.get(exceptionMessage);
+		if (decision == null) {
+			decision = match(exceptionMessage);
+			decisions.put(exceptionMessage, decision);
+		}
+		return decision < 0 ? null : remapped.get(decision);
+	}
+
+	private Integer match(String exceptionMessage) {
+		if (combined == null) {
+			for (int i = remapped.size() - 1; i >= 0; i--)
+				if (remapped.get(i).matches(exceptionMessage))
+					return i;
+			return NO_HANDLER;
+		}
+		Matcher m = combined.matcher(exceptionMessage);
+		if (!m.matches())
+			return NO_HANDLER;
+		for (int i = remapped.size() - 1; i >= 0; i--)
+			if (m.start(groups[i]) >= 0)
+				return i;
+		return NO_HANDLER;
+	}
 }
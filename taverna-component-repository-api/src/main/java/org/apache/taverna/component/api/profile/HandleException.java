@@ -29,6 +29,10 @@ public class HandleException {
 		return pattern.matcher(s).matches();
 	}
 
+	Pattern getPattern() {
+		return pattern;
+	}
+
 	public boolean pruneStack() {
 		return pruneStack;
 	}
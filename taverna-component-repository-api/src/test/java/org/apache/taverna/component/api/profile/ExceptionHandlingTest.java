@@ -0,0 +1,85 @@
+package org.apache.taverna.component.api.profile;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that the handler found for an exception is the same whether the
+ * patterns can be matched all at once or have to be tried one by one.
+ */
+public class ExceptionHandlingTest {
+	private static ExceptionHandling handling(String... patterns) {
+		org.apache.taverna.component.api.profile.doc.ExceptionHandling doc;
+		doc = new org.apache.taverna.component.api.profile.doc.ExceptionHandling();
+		for (String pattern : patterns) {
+			org.apache.taverna.component.api.profile.doc.HandleException he;
+			he = new org.apache.taverna.component.api.profile.doc.HandleException();
+			he.setPattern(pattern);
+			doc.getHandleException().add(he);
+		}
+		return new ExceptionHandling(doc);
+	}
+
+	private static void assertHandler(ExceptionHandling handling, int index,
+			String message) {
+		List<HandleException> handlers = handling.getHandleExceptions();
+		assertSame(message, handlers.get(index), handling.findHandler(message));
+		// Asking again gives the remembered answer
+		assertSame(message, handlers.get(index), handling.findHandler(message));
+	}
+
+	@Test
+	public void testLastMatchingHandlerUsed() {
+		ExceptionHandling handling = handling("conn.*", ".*refused",
+				"timed out");
+		assertHandler(handling, 1, "connection refused");
+		assertHandler(handling, 0, "connection reset");
+		assertHandler(handling, 2, "timed out");
+		assertNull(handling.findHandler("no route to host"));
+		assertNull(handling.findHandler(null));
+	}
+
+	@Test
+	public void testWholeMessageMatched() {
+		ExceptionHandling handling = handling("refused", "(time)d out");
+		assertNull(handling.findHandler("connection refused"));
+		assertHandler(handling, 1, "timed out");
+	}
+
+	@Test
+	public void testMultiLineMessage() {
+		ExceptionHandling handling = handling("refused.*", ".*busy");
+		assertHandler(handling, 0, "refused\nat line 1\nat line 2");
+		assertHandler(handling, 1, "server\nbusy");
+	}
+
+	@Test
+	public void testBackReferencesMatchedSeparately() {
+		ExceptionHandling handling = handling("(a+)b", "(a)\\1");
+		assertHandler(handling, 0, "aab");
+		assertHandler(handling, 1, "aa");
+		assertNull(handling.findHandler("ab a"));
+	}
+
+	@Test
+	public void testDuplicateGroupNamesMatchedSeparately() {
+		ExceptionHandling handling = handling("(?<code>4\\d\\d) .*",
+				"(?<code>5\\d\\d) .*");
+		assertHandler(handling, 0, "404 not found");
+		assertHandler(handling, 1, "503 unavailable");
+		assertNull(handling.findHandler("200 OK"));
+	}
+
+	@Test
+	public void testCommentsMatchedSeparately() {
+		ExceptionHandling handling = handling("(?x) time d \\s out # slow",
+				"(?x) refused # nobody there");
+		assertHandler(handling, 0, "timed out");
+		assertHandler(handling, 1, "refused");
+		assertNull(handling.findHandler("timed out refused"));
+	}
+}